@@ -16,7 +16,10 @@ java {
 
 repositories {
     mavenCentral()
-    maven("https://jitpack.io")
+    exclusiveContent {
+        forRepository { maven("https://jitpack.io") }
+        filter { includeGroup("com.github.skidfuscatordev.skidfuscator-java-obfuscator") }
+    }
 }
 
 dependencies {
@@ -25,11 +28,90 @@ dependencies {
 
     implementation("com.typesafe:config:1.4.3")
     implementation("commons-io:commons-io:2.11.0")
+    implementation("org.ow2.asm:asm:9.7.1")
+    implementation("org.ow2.asm:asm-commons:9.7.1")
+    implementation("org.apache.commons:commons-compress:1.26.1")
 
     compileOnly(gradleApi())
     compileOnly("org.codehaus.groovy:groovy-all:3.0.25")
+}
+
+testing {
+    suites {
+        val test by getting(JvmTestSuite::class) {
+            useJUnitJupiter("5.11.4")
+            dependencies {
+                implementation("org.ow2.asm:asm:9.7.1")
+            }
+        }
+
+        // Runs the plugin through TestKit on synthetic projects, with a stand-in for Skidfuscator so it works offline
+        register<JvmTestSuite>("performanceTest") {
+            useJUnitJupiter("5.11.4")
+            dependencies {
+                implementation(project())
+                implementation(sourceSets.test.get().output)
+                implementation(gradleTestKit())
+                implementation("org.ow2.asm:asm:9.7.1")
+                implementation("com.typesafe:config:1.4.3")
+            }
+            targets.all {
+                testTask.configure {
+                    shouldRunAfter(tasks.test)
+                    listOf("classes", "libraries", "classesPerLibrary").forEach { name ->
+                        providers.gradleProperty("skidfuscator.perf.$name").orNull?.let {
+                            systemProperty("skidfuscator.perf.$name", it)
+                        }
+                    }
+                    testLogging.showStandardStreams = true
+                }
+            }
+        }
+
+        // Checks the plugin's own dependency analysis against Skidfuscator's analyzer, which is only published on JitPack.
+        // Needs the network, so it is left out of check and run on its own with ./gradlew analyzerEquivalenceTest
+        register<JvmTestSuite>("analyzerEquivalenceTest") {
+            useJUnitJupiter("5.11.4")
+            dependencies {
+                implementation(project())
+                implementation(sourceSets.test.get().output)
+                implementation("org.ow2.asm:asm:9.7.1")
+                implementation("com.github.skidfuscatordev.skidfuscator-java-obfuscator:depend-analysis:2.0.11-EMERGENCY")
+            }
+        }
+    }
+}
+
+tasks.check {
+    dependsOn(testing.suites.named("performanceTest"))
+}
+
+// JMH benchmarks of the plugin's own pipeline, run with ./gradlew jmh [-Pjmh.args="..."]
+val jmh by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+    runtimeClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+}
+
+configurations[jmh.implementationConfigurationName].extendsFrom(configurations.testImplementation.get())
+configurations[jmh.runtimeOnlyConfigurationName].extendsFrom(configurations.testRuntimeOnly.get())
+
+dependencies {
+    jmh.implementationConfigurationName("org.openjdk.jmh:jmh-core:1.37")
+    jmh.annotationProcessorConfigurationName("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+}
 
-    api("com.github.skidfuscatordev.skidfuscator-java-obfuscator:depend-analysis:2.0.11-EMERGENCY")
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks of the plugin's pipeline on synthetic jars."
+    classpath = jmh.runtimeClasspath
+    mainClass = "org.openjdk.jmh.Main"
+    val resultFile = layout.buildDirectory.file("reports/jmh/results.json")
+    outputs.file(resultFile)
+    outputs.upToDateWhen { false }
+    args(providers.gradleProperty("jmh.args").map { it.split(" ").filter(String::isNotBlank) }.getOrElse(emptyList()))
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf("-rf", "json", "-rff", resultFile.get().asFile.absolutePath)
+    })
 }
 
 tasks.shadowJar {
@@ -37,6 +119,7 @@ tasks.shadowJar {
 }
 
 gradlePlugin {
+    testSourceSets(sourceSets.test.get(), sourceSets["performanceTest"])
     website = "https://github.com/terminalsin/skidfuscator-java-obfuscator"
     vcsUrl = "https://github.com/terminalsin/skidfuscator-gradle-plugin"
 
@@ -0,0 +1,59 @@
+package dev.skidfuscator.gradle;
+
+import dev.skidfuscator.dependanalysis.DependencyAnalyzer;
+import dev.skidfuscator.dependanalysis.DependencyResult;
+import org.gradle.api.logging.Logging;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AnalyzerEquivalenceTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void selectsTheSameLibrariesAsSkidfuscatorsAnalyzer() throws Exception {
+        final File input = new TestJar()
+                .addClass("app/Main", "base/Base", "api/Service")
+                .addClass("app/Plain", "java/lang/Object")
+                .addClass("app/Local", "app/Plain", "java/io/Serializable")
+                .addInterface("app/Listener", "event/Listener")
+                .write(new File(dir, "input.jar"));
+
+        final File libs = new File(dir, "libs");
+        new TestJar().addClass("base/Base", "root/Root").write(new File(libs, "base.jar"));
+        new TestJar().addClass("root/Root", "java/lang/Object", "root/Marker")
+                .addInterface("root/Marker").write(new File(libs, "root.jar"));
+        new TestJar().addInterface("api/Service").write(new File(libs, "api.jar"));
+        new TestJar().addInterface("event/Listener", "event/Base").write(new File(libs, "event.jar"));
+        new TestJar().addInterface("event/Base").write(new File(libs, "event-base.jar"));
+        new TestJar().addClass("unused/Unused", "java/lang/Object").write(new File(libs, "unused.jar"));
+        new TestJar().addClass("other/Other", "base/Base").write(new File(libs, "other.jar"));
+
+        final File[] files = libs.listFiles();
+        final List<File> libraries = new ArrayList<>(Arrays.asList(files));
+        libraries.sort(Comparator.comparing(File::getName));
+
+        final DependencyResult reference = new DependencyAnalyzer(input.toPath(), libs.toPath()).analyze();
+        final DependencyAnalysis analysis = new CachingDependencyAnalyzer(new File(dir, "cache"), 1,
+                new ConcurrentHashMap<>(), Logging.getLogger(AnalyzerEquivalenceTest.class))
+                .analyze(input, JarFingerprint.of(input), libraries);
+
+        final Set<String> expected = reference.getJarDependencies().stream()
+                .map(jar -> jar.getJarPath().getFileName().toString())
+                .collect(Collectors.toCollection(TreeSet::new));
+        final Set<String> actual = analysis.getJarDependencies().stream()
+                .map(jar -> jar.getJarPath().getFileName().toString())
+                .collect(Collectors.toCollection(TreeSet::new));
+
+        assertEquals(new TreeSet<>(Arrays.asList("api.jar", "base.jar", "event-base.jar", "event.jar", "root.jar")), actual);
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,138 @@
+package dev.skidfuscator.gradle;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the preparation stages of {@link SkidfuscatorTask} on synthetic jars, each on its own.
+ *
+ * Cold runs start from empty staging and analysis directories, warm runs reuse what the trial's
+ * setup left behind, as a second build of an unchanged project would. Run with {@code ./gradlew jmh},
+ * the whole task is measured by the TestKit performance test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+    private static final Logger LOGGER = Logging.getLogger(PipelineBenchmark.class);
+
+    @Param({"500", "5000"})
+    public int classes;
+
+    @Param({"20", "200"})
+    public int libraries;
+
+    @Param({"100"})
+    public int classesPerLibrary;
+
+    private File dir;
+    private SyntheticJars jars;
+    private String fingerprint;
+    private List<File> staged;
+    private List<String> stagedPaths;
+    private Map<String, Object> transformers;
+    private int coldRuns;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        dir = Files.createTempDirectory("skidfuscator-jmh").toFile();
+        jars = SyntheticJars.generate(dir, classes, libraries, classesPerLibrary);
+        fingerprint = JarFingerprint.of(jars.getInput());
+        staged = stager(new File(dir, "warm")).stage(jars.getLibraries());
+        stagedPaths = new ArrayList<>();
+        for (File file : staged) {
+            stagedPaths.add(file.getAbsolutePath());
+        }
+        analyzer(new File(dir, "warm/analysis")).analyze(jars.getInput(), fingerprint, staged);
+
+        transformers = new HashMap<>();
+        for (String name : Arrays.asList("stringEncryption", "numberEncryption", "flowCondition", "interprocedural")) {
+            final Map<String, Object> transformer = new HashMap<>();
+            transformer.put("enabled", true);
+            transformer.put("exempt", Collections.singletonList("class{^app/Type1}"));
+            transformers.put(name, transformer);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void removeColdRuns() throws IOException {
+        FileUtils.deleteDirectory(new File(dir, "cold"));
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    /**
+     * {@code collectDependencies} on a first build: every library is hashed and linked or copied.
+     */
+    @Benchmark
+    public List<File> stageDependenciesCold() {
+        return stager(nextColdDir()).stage(jars.getLibraries());
+    }
+
+    /**
+     * {@code collectDependencies} on a later build: every library is found staged already.
+     */
+    @Benchmark
+    public List<File> stageDependenciesWarm() {
+        return stager(new File(dir, "warm")).stage(jars.getLibraries());
+    }
+
+    @Benchmark
+    public String fingerprintInput() throws IOException {
+        return JarFingerprint.of(jars.getInput());
+    }
+
+    /**
+     * Dependency analysis without any cached index or result.
+     */
+    @Benchmark
+    public DependencyAnalysis analyzeCold() throws IOException {
+        return analyzer(new File(nextColdDir(), "analysis")).analyze(jars.getInput(), fingerprint, staged);
+    }
+
+    /**
+     * Dependency analysis of an unchanged input and classpath, answered from the cached result.
+     */
+    @Benchmark
+    public DependencyAnalysis analyzeWarm() throws IOException {
+        return analyzer(new File(dir, "warm/analysis")).analyze(jars.getInput(), fingerprint, staged);
+    }
+
+    /**
+     * {@code buildConfig} and its rendering as done by {@code writeHoconConfig}.
+     */
+    @Benchmark
+    public String renderConfig() {
+        return SkidfuscatorTask.renderConfig(Collections.singletonList("class{^app/Type0}"),
+                Collections.singletonList("class{^app/Type2}"), transformers, stagedPaths);
+    }
+
+    private File nextColdDir() {
+        return new File(dir, "cold/" + coldRuns++);
+    }
+
+    private static DependencyStager stager(File workingDir) {
+        return new DependencyStager(new File(workingDir, "dependencies"), new File(workingDir, "dependencies.index"), LOGGER);
+    }
+
+    private static CachingDependencyAnalyzer analyzer(File cacheDir) {
+        return new CachingDependencyAnalyzer(cacheDir, Runtime.getRuntime().availableProcessors(),
+                new ConcurrentHashMap<>(), LOGGER);
+    }
+}
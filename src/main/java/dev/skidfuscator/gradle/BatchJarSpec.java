@@ -0,0 +1,53 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.Named;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+
+import javax.inject.Inject;
+
+/**
+ * A jar obfuscated together with the other jars of the batch in a single Skidfuscator run.
+ */
+public abstract class BatchJarSpec implements Named {
+    private final String name;
+
+    @Inject
+    public BatchJarSpec(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Configured through the Gradle DSL, the jar may come from any project:
+     * batch {
+     *   api {
+     *     input = project(':api').tasks.named('jar').flatMap { it.archiveFile }
+     *     classpath.from(project(':api').configurations.compileClasspath)
+     *   }
+     * }
+     * The output defaults to {@code build/skidfuscator/batch/<name>-obf.jar}.
+     */
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getInput();
+
+    @OutputFile
+    public abstract RegularFileProperty getOutput();
+
+    /**
+     * Libraries of this jar, merged with those of the other jars. Tracked as the task's classpath.
+     */
+    @Internal
+    public abstract ConfigurableFileCollection getClasspath();
+
+    @Internal
+    @Override
+    public String getName() {
+        return name;
+    }
+}
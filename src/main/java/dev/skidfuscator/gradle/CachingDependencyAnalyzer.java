@@ -0,0 +1,261 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Determines which libraries the input jar's class hierarchy needs, reusing work from earlier runs.
+ *
+ * Every jar's hierarchy is indexed once and stored under its content key, so only libraries
+ * that are new or changed get scanned again. The library indexes are combined into a memory-mapped
+ * {@link ClasspathIndex}, which later runs with the same libraries map instead of loading every
+ * library index. The final analysis is stored as well, keyed by the input jar's {@link JarFingerprint}
+ * plus the library keys, and returned as is when none of them changed.
+ *
+ * Libraries are expected to be staged by {@link DependencyStager}, whose file names already
+ * carry their content hash and serve as the library keys.
+ *
+ * Jars are indexed concurrently on a pool bounded by the configured parallelism. The hierarchy
+ * is then resolved on the calling thread in library order, so the result does not depend on
+ * the parallelism.
+ */
+final class CachingDependencyAnalyzer {
+
+    private final File cacheDir;
+    private final int parallelism;
+    private final Map<String, HierarchyIndex> sharedIndexes;
+    private final Logger logger;
+
+    /**
+     * @param sharedIndexes indexes already loaded by other projects of the build, by library key
+     */
+    CachingDependencyAnalyzer(File cacheDir, int parallelism, Map<String, HierarchyIndex> sharedIndexes, Logger logger) {
+        this.cacheDir = cacheDir;
+        this.parallelism = Math.max(1, parallelism);
+        this.sharedIndexes = sharedIndexes;
+        this.logger = logger;
+    }
+
+    DependencyAnalysis analyze(File inputJar, String inputFingerprint, List<File> libraries) throws IOException {
+        final File indexDir = new File(cacheDir, "index");
+        if (!indexDir.exists() && !indexDir.mkdirs()) {
+            throw new IOException("Failed to create analysis cache directory: " + indexDir.getAbsolutePath());
+        }
+
+        final String inputKey = "input-" + inputFingerprint;
+        final String resultKey = resultKey(inputKey, libraries);
+        final File resultFile = new File(cacheDir, "result.bin");
+
+        DependencyAnalysis cached = DependencyAnalysis.load(resultFile, resultKey);
+        if (cached != null) {
+            logger.lifecycle("Reusing cached dependency analysis.");
+            return cached;
+        }
+
+        final Set<String> usedIndexes = new HashSet<>();
+        usedIndexes.add(inputKey + ".idx");
+        for (File library : libraries) {
+            usedIndexes.add(library.getName() + ".idx");
+        }
+
+        // Library keys are content hashes, so the classpath index only changes with the libraries
+        final File classpathFile = new File(cacheDir, "classpath-" + classpathKey(libraries) + ".idx");
+        ClasspathIndex classpath = ClasspathIndex.load(classpathFile);
+        if (classpath != null && classpath.getLibraryCount() != libraries.size()) {
+            classpath = null;
+        }
+
+        final List<Callable<HierarchyIndex>> tasks = new ArrayList<>(libraries.size() + 1);
+        tasks.add(() -> index(inputJar, inputKey, indexDir, false));
+        int scanned = 0;
+        if (classpath == null) {
+            final Set<String> keys = new HashSet<>();
+            for (File library : libraries) {
+                final String key = library.getName();
+                if (keys.add(key) && !sharedIndexes.containsKey(key) && !new File(indexDir, key + ".idx").exists()) {
+                    scanned++;
+                }
+                tasks.add(() -> index(library, key, indexDir, true));
+            }
+        }
+
+        final List<HierarchyIndex> indexes = indexAll(tasks);
+        final HierarchyIndex main = indexes.get(0);
+        if (classpath == null) {
+            logger.lifecycle("Indexed " + scanned + " new or changed libraries, reused " + (libraries.size() - scanned) + ".");
+            ClasspathIndex.write(classpathFile, indexes.subList(1, indexes.size()));
+            classpath = ClasspathIndex.load(classpathFile);
+            if (classpath == null) {
+                throw new IOException("Failed to read back the classpath index " + classpathFile.getAbsolutePath());
+            }
+            pruneClasspathIndexes(classpathFile);
+        } else {
+            logger.lifecycle("Reusing the class index of " + libraries.size() + " libraries, "
+                    + classpath.getClassCount() + " classes.");
+        }
+
+        final DependencyAnalysis analysis = resolve(main, libraries, classpath);
+        analysis.store(resultFile, resultKey);
+        prune(indexDir, usedIndexes);
+        return analysis;
+    }
+
+    /**
+     * Walks the superclasses and interfaces of every input class, recording each supertype
+     * that is declared by a library. The first library declaring a class wins, like on a classpath.
+     */
+    static DependencyAnalysis resolve(HierarchyIndex main, List<File> libraries, ClasspathIndex classpath) {
+        final DependencyAnalysis.Builder builder = new DependencyAnalysis.Builder(libraries);
+        final Set<String> visited = new HashSet<>();
+        final Deque<String> pending = new ArrayDeque<>(main.getClassNames());
+        while (!pending.isEmpty()) {
+            final String className = pending.pop();
+            final String[] supertypes = main.contains(className)
+                    ? main.getSupertypes(className)
+                    : classpath.getSupertypes(className);
+
+            for (int i = 0; i < supertypes.length; i++) {
+                final String type = supertypes[i];
+                if (type == null || main.contains(type)) {
+                    continue;
+                }
+
+                final int owner = classpath.libraryOf(type);
+                if (owner == -1) {
+                    continue;
+                }
+
+                final String reason = (i == 0 ? "Superclass of " : "Interface of ") + className.replace('/', '.');
+                builder.add(libraries.get(owner), type.replace('/', '.'), reason);
+                if (visited.add(type)) {
+                    pending.push(type);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private List<HierarchyIndex> indexAll(List<Callable<HierarchyIndex>> tasks) throws IOException {
+        if (parallelism == 1) {
+            final List<HierarchyIndex> indexes = new ArrayList<>(tasks.size());
+            for (Callable<HierarchyIndex> task : tasks) {
+                indexes.add(call(task));
+            }
+            return indexes;
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            final List<HierarchyIndex> indexes = new ArrayList<>(tasks.size());
+            for (Future<HierarchyIndex> future : pool.invokeAll(tasks)) {
+                indexes.add(future.get());
+            }
+            return indexes;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing libraries", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to index libraries: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static HierarchyIndex call(Callable<HierarchyIndex> task) throws IOException {
+        try {
+            return task.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private HierarchyIndex index(File jar, String key, File indexDir, boolean shared) throws IOException {
+        final File indexFile = new File(indexDir, key + ".idx");
+        final HierarchyIndex sharedIndex = shared ? sharedIndexes.get(key) : null;
+        if (sharedIndex != null) {
+            // Kept on disk as well, so the next build of this project finds it without the other projects
+            if (!indexFile.exists()) {
+                sharedIndex.store(indexFile);
+            }
+            return sharedIndex;
+        }
+
+        HierarchyIndex index = null;
+        if (indexFile.exists()) {
+            try {
+                index = HierarchyIndex.load(indexFile);
+            } catch (IOException e) {
+                logger.debug("Rebuilding unreadable hierarchy index " + indexFile.getName() + ": " + e.getMessage());
+            }
+        }
+        if (index == null) {
+            index = HierarchyIndex.read(jar);
+            index.store(indexFile);
+        }
+        if (shared) {
+            sharedIndexes.putIfAbsent(key, index);
+        }
+        return index;
+    }
+
+    private static void prune(File indexDir, Set<String> usedIndexes) {
+        File[] files = indexDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!usedIndexes.contains(file.getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Removes the classpath indexes of other library sets. One still mapped by this JVM may not be
+     * deletable on Windows, it is retried on a later run.
+     */
+    private void pruneClasspathIndexes(File current) {
+        final File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().startsWith("classpath-") && !file.equals(current) && !file.delete()) {
+                logger.debug("Failed to remove old classpath index " + file.getName());
+            }
+        }
+    }
+
+    private static String classpathKey(List<File> libraries) {
+        MessageDigest digest = FileHashes.sha256();
+        for (File library : libraries) {
+            digest.update(library.getName().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return FileHashes.hex(digest.digest()).substring(0, 16);
+    }
+
+    private static String resultKey(String inputKey, List<File> libraries) {
+        MessageDigest digest = FileHashes.sha256();
+        digest.update(inputKey.getBytes(StandardCharsets.UTF_8));
+        for (File library : libraries) {
+            digest.update((byte) 0);
+            digest.update(library.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+        }
+        return FileHashes.hex(digest.digest());
+    }
+}
@@ -0,0 +1,85 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.logging.Logger;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds the JVM flags that create and use an AppCDS archive for a Skidfuscator jar.
+ *
+ * The archive is stored next to the cached jar, one per JVM installation, since an archive
+ * can only be mapped by the exact JVM build that dumped it. Java 19 and newer create and
+ * refresh the archive on their own, Java 13 to 18 dump it at the end of the first run and map
+ * it from then on. Older JVMs and JVMs whose version cannot be determined run without it.
+ */
+final class ClassDataSharing {
+
+    private ClassDataSharing() {
+    }
+
+    static List<String> jvmArgs(File skidJar, String javaExecutable, Integer knownVersion, Logger logger) {
+        final File javaHome = JavaInstallation.home(javaExecutable);
+        final String release = javaHome == null ? null : JavaInstallation.release(javaHome);
+        final int version = knownVersion != null ? knownVersion : JavaInstallation.featureVersion(release);
+
+        if (version < 13) {
+            logger.info("Class data sharing needs Java 13 or newer, running Skidfuscator without an archive.");
+            return Collections.emptyList();
+        }
+
+        final File archive = archive(skidJar, javaHome, release);
+        final List<String> args = new ArrayList<>();
+        if (version >= 19) {
+            args.add("-XX:+AutoCreateSharedArchive");
+            args.add("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+        } else if (archive.exists()) {
+            args.add("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+        } else {
+            logger.lifecycle("Creating class data sharing archive for Skidfuscator, later runs will start faster.");
+            args.add("-XX:ArchiveClassesAtExit=" + archive.getAbsolutePath());
+        }
+        // A stale or foreign archive is skipped instead of failing the run
+        args.add("-Xshare:auto");
+        return args;
+    }
+
+    /**
+     * Whether the flags dump a new archive at the end of the run. The JVM refuses to dump
+     * while a java agent is attached.
+     */
+    static boolean dumpsArchive(List<String> jvmArgs) {
+        for (String arg : jvmArgs) {
+            if (arg.startsWith("-XX:ArchiveClassesAtExit=")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the next run with the flags of {@link #jvmArgs} writes the archive. Runs started
+     * together would all write the same file.
+     */
+    static boolean createsArchive(File skidJar, String javaExecutable, Integer knownVersion) {
+        final File javaHome = JavaInstallation.home(javaExecutable);
+        final String release = javaHome == null ? null : JavaInstallation.release(javaHome);
+        final int version = knownVersion != null ? knownVersion : JavaInstallation.featureVersion(release);
+        return version >= 13 && !archive(skidJar, javaHome, release).exists();
+    }
+
+    private static File archive(File skidJar, File javaHome, String release) {
+        return new File(skidJar.getParentFile(), "skidfuscator-" + jvmKey(javaHome, release) + ".jsa");
+    }
+
+    private static String jvmKey(File javaHome, String release) {
+        MessageDigest digest = FileHashes.sha256();
+        digest.update(String.valueOf(javaHome).getBytes(StandardCharsets.UTF_8));
+        digest.update(String.valueOf(release).getBytes(StandardCharsets.UTF_8));
+        return FileHashes.hex(digest.digest()).substring(0, 16);
+    }
+}
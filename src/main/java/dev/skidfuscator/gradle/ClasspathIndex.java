@@ -0,0 +1,254 @@
+package dev.skidfuscator.gradle;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Which library declares a class, and its supertypes, for a whole classpath in one memory-mapped file.
+ *
+ * The file is built once per set of libraries from their {@link HierarchyIndex}es. Loading it only
+ * maps the file, nothing is parsed up front. Classes are found through an open addressing hash table,
+ * so a lookup touches a few bytes of the file and allocates nothing but the supertype names it returns.
+ * When several libraries declare a class, the first one wins, like on a classpath.
+ *
+ * Layout, all numbers big endian:
+ * <pre>
+ * header   magic, version, library count, class count, table size
+ * table    one record offset per slot, 0 for an empty slot
+ * records  name hash, name offset, library, supertype count (short), supertype name offsets (-1 for none)
+ * strings  length (unsigned short) and UTF-8 bytes, every name once
+ * </pre>
+ */
+final class ClasspathIndex {
+
+    private static final int MAGIC = 0x534B4349;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+
+    private final ByteBuffer buffer;
+    private final int libraryCount;
+    private final int classCount;
+    private final int mask;
+
+    private ClasspathIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        try {
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported classpath index");
+            }
+            this.libraryCount = buffer.getInt(8);
+            this.classCount = buffer.getInt(12);
+            final int tableSize = buffer.getInt(16);
+            if (Integer.bitCount(tableSize) != 1 || HEADER_BYTES + (long) tableSize * 4 > buffer.limit()) {
+                throw new IOException("Damaged classpath index");
+            }
+            this.mask = tableSize - 1;
+        } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new IOException("Truncated classpath index", e);
+        }
+    }
+
+    /**
+     * Maps an index file, or returns {@code null} when there is none or it is unreadable.
+     */
+    static ClasspathIndex load(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // The mapping stays valid once the channel is closed
+            return new ClasspathIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the index of the given libraries, in classpath order.
+     */
+    static void write(File file, List<HierarchyIndex> libraries) throws IOException {
+        final Map<String, Integer> owners = new HashMap<>();
+        final Map<String, String[]> supertypes = new HashMap<>();
+        final List<String> classes = new ArrayList<>();
+        for (int i = 0; i < libraries.size(); i++) {
+            final HierarchyIndex library = libraries.get(i);
+            for (String className : library.getClassNames()) {
+                if (owners.putIfAbsent(className, i) == null) {
+                    supertypes.put(className, library.getSupertypes(className));
+                    classes.add(className);
+                }
+            }
+        }
+
+        // Strings first, records refer to them by offset
+        final ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        final DataOutputStream stringsOut = new DataOutputStream(strings);
+        final Map<String, Integer> stringOffsets = new HashMap<>();
+        long recordBytes = 0;
+        for (String className : classes) {
+            intern(className, stringsOut, stringOffsets);
+            for (String type : supertypes.get(className)) {
+                if (type != null) {
+                    intern(type, stringsOut, stringOffsets);
+                }
+            }
+            recordBytes += 14 + 4L * supertypes.get(className).length;
+        }
+
+        // At most half full, so probe sequences stay short
+        int tableSize = 2;
+        while (tableSize < classes.size() * 2) {
+            tableSize <<= 1;
+        }
+        final long recordsStart = HEADER_BYTES + (long) tableSize * 4;
+        final long stringsStart = recordsStart + recordBytes;
+        if (stringsStart + strings.size() > Integer.MAX_VALUE) {
+            throw new IOException("The classpath is too large to index: " + classes.size() + " classes");
+        }
+
+        final int[] table = new int[tableSize];
+        final ByteArrayOutputStream records = new ByteArrayOutputStream((int) recordBytes);
+        final DataOutputStream recordsOut = new DataOutputStream(records);
+        for (String className : classes) {
+            int slot = spread(className.hashCode()) & (tableSize - 1);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & (tableSize - 1);
+            }
+            table[slot] = (int) (recordsStart + records.size());
+
+            final String[] types = supertypes.get(className);
+            recordsOut.writeInt(className.hashCode());
+            recordsOut.writeInt((int) stringsStart + stringOffsets.get(className));
+            recordsOut.writeInt(owners.get(className));
+            recordsOut.writeShort(types.length);
+            for (String type : types) {
+                recordsOut.writeInt(type == null ? -1 : (int) stringsStart + stringOffsets.get(type));
+            }
+        }
+
+        final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (OutputStream stream = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(libraries.size());
+            out.writeInt(classes.size());
+            out.writeInt(tableSize);
+            for (int offset : table) {
+                out.writeInt(offset);
+            }
+            records.writeTo(out);
+            strings.writeTo(out);
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Failed to move " + tmp + " to " + file);
+            }
+        }
+    }
+
+    private static void intern(String value, DataOutputStream out, Map<String, Integer> offsets) throws IOException {
+        if (offsets.containsKey(value)) {
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Class name too long to index: " + value.substring(0, 64) + "...");
+        }
+        offsets.put(value, out.size());
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    int getLibraryCount() {
+        return libraryCount;
+    }
+
+    int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * @return the position on the classpath of the library declaring the class, or -1 when none does
+     */
+    int libraryOf(String className) {
+        final int record = find(className);
+        return record == 0 ? -1 : buffer.getInt(record + 8);
+    }
+
+    /**
+     * @return the superclass followed by the interfaces, the superclass may be {@code null};
+     * {@code null} when no library declares the class
+     */
+    String[] getSupertypes(String className) {
+        final int record = find(className);
+        if (record == 0) {
+            return null;
+        }
+        final String[] types = new String[buffer.getShort(record + 12) & 0xFFFF];
+        for (int i = 0; i < types.length; i++) {
+            final int offset = buffer.getInt(record + 14 + 4 * i);
+            types[i] = offset == -1 ? null : string(offset);
+        }
+        return types;
+    }
+
+    private int find(String className) {
+        final int hash = className.hashCode();
+        int slot = spread(hash) & mask;
+        while (true) {
+            final int record = buffer.getInt(HEADER_BYTES + 4 * slot);
+            if (record == 0) {
+                return 0;
+            }
+            if (buffer.getInt(record) == hash && nameEquals(buffer.getInt(record + 4), className)) {
+                return record;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Compares without decoding, class names are almost always ASCII.
+     */
+    private boolean nameEquals(int offset, String name) {
+        final int length = buffer.getShort(offset) & 0xFFFF;
+        for (int i = 0; i < length; i++) {
+            final byte b = buffer.get(offset + 2 + i);
+            if (b < 0) {
+                return string(offset).equals(name);
+            }
+            if (i >= name.length() || b != name.charAt(i)) {
+                return false;
+            }
+        }
+        return length == name.length();
+    }
+
+    private String string(int offset) {
+        final byte[] bytes = new byte[buffer.getShort(offset) & 0xFFFF];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(offset + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
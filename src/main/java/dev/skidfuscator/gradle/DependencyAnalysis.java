@@ -0,0 +1,155 @@
+package dev.skidfuscator.gradle;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * The libraries, and the classes within them, that the input jar's class hierarchy needs.
+ *
+ * Mirrors the shape of Skidfuscator's {@code DependencyResult} so it can be persisted
+ * between builds.
+ */
+final class DependencyAnalysis {
+
+    private static final int MAGIC = 0x534B4441;
+    private static final int VERSION = 1;
+
+    private final List<JarDependency> jarDependencies;
+
+    private DependencyAnalysis(List<JarDependency> jarDependencies) {
+        this.jarDependencies = jarDependencies;
+    }
+
+    List<JarDependency> getJarDependencies() {
+        return jarDependencies;
+    }
+
+    /**
+     * Loads a previously stored analysis.
+     *
+     * @return the analysis, or {@code null} if none was stored for the given key
+     */
+    static DependencyAnalysis load(File file, String key) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !key.equals(in.readUTF())) {
+                return null;
+            }
+            int jars = in.readInt();
+            List<JarDependency> jarDependencies = new ArrayList<>(jars);
+            for (int i = 0; i < jars; i++) {
+                File jar = new File(in.readUTF());
+                int classes = in.readInt();
+                List<ClassDependency> classesNeeded = new ArrayList<>(classes);
+                for (int j = 0; j < classes; j++) {
+                    String className = in.readUTF();
+                    int reasonCount = in.readInt();
+                    List<String> reasons = new ArrayList<>(reasonCount);
+                    for (int k = 0; k < reasonCount; k++) {
+                        reasons.add(in.readUTF());
+                    }
+                    classesNeeded.add(new ClassDependency(className, reasons));
+                }
+                if (!jar.exists()) {
+                    return null;
+                }
+                jarDependencies.add(new JarDependency(jar, classesNeeded));
+            }
+            return new DependencyAnalysis(jarDependencies);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    void store(File file, String key) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(key);
+            out.writeInt(jarDependencies.size());
+            for (JarDependency jarDependency : jarDependencies) {
+                out.writeUTF(jarDependency.jar.getAbsolutePath());
+                out.writeInt(jarDependency.classesNeeded.size());
+                for (ClassDependency classDependency : jarDependency.classesNeeded) {
+                    out.writeUTF(classDependency.className);
+                    out.writeInt(classDependency.reasons.size());
+                    for (String reason : classDependency.reasons) {
+                        out.writeUTF(reason);
+                    }
+                }
+            }
+        }
+    }
+
+    static final class JarDependency {
+        private final File jar;
+        private final List<ClassDependency> classesNeeded;
+
+        private JarDependency(File jar, List<ClassDependency> classesNeeded) {
+            this.jar = jar;
+            this.classesNeeded = classesNeeded;
+        }
+
+        Path getJarPath() {
+            return jar.toPath();
+        }
+
+        List<ClassDependency> getClassesNeeded() {
+            return classesNeeded;
+        }
+    }
+
+    static final class ClassDependency {
+        private final String className;
+        private final List<String> reasons;
+
+        private ClassDependency(String className, List<String> reasons) {
+            this.className = className;
+            this.reasons = reasons;
+        }
+
+        String getClassName() {
+            return className;
+        }
+
+        List<String> getReasons() {
+            return reasons;
+        }
+    }
+
+    /**
+     * Collects dependencies while the hierarchy is walked, keeping jars in library order.
+     */
+    static final class Builder {
+        private final List<File> libraries;
+        private final Map<File, Map<String, List<String>>> needed = new HashMap<>();
+
+        Builder(List<File> libraries) {
+            this.libraries = libraries;
+        }
+
+        void add(File jar, String className, String reason) {
+            needed.computeIfAbsent(jar, k -> new LinkedHashMap<>())
+                    .computeIfAbsent(className, k -> new ArrayList<>())
+                    .add(reason);
+        }
+
+        DependencyAnalysis build() {
+            List<JarDependency> jarDependencies = new ArrayList<>();
+            for (File library : libraries) {
+                Map<String, List<String>> classes = needed.get(library);
+                if (classes == null) {
+                    continue;
+                }
+                List<ClassDependency> classesNeeded = new ArrayList<>(classes.size());
+                classes.forEach((className, reasons) -> classesNeeded.add(new ClassDependency(className, reasons)));
+                jarDependencies.add(new JarDependency(library, classesNeeded));
+            }
+            return new DependencyAnalysis(jarDependencies);
+        }
+    }
+}
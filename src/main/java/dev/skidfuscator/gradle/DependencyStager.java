@@ -0,0 +1,205 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.logging.Logger;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Stages dependency jars into a directory, keyed by their content hash.
+ *
+ * A staged entry is named after the source jar plus a prefix of its SHA-256, so an
+ * entry that already exists never has to be rewritten. Jars are hard linked when
+ * possible, symlinked otherwise and only copied as a last resort. Source hashes are
+ * remembered in an index next to the staging directory, keyed by path, size and
+ * modification time, so unchanged jars are not even re-read between runs. Copies are
+ * written to a temporary file first and moved into place, so an interrupted build
+ * cannot leave a truncated jar under its final name.
+ */
+final class DependencyStager {
+
+    private static final int HASH_PREFIX_LENGTH = 16;
+
+    private final File stagingDir;
+    private final File indexFile;
+    private final Logger logger;
+
+    private int linked;
+    private int copied;
+    private int reused;
+    private int removed;
+    private long bytesCopied;
+
+    DependencyStager(File stagingDir, File indexFile, Logger logger) {
+        this.stagingDir = stagingDir;
+        this.indexFile = indexFile;
+        this.logger = logger;
+    }
+
+    /**
+     * Brings the staging directory in sync with the given dependencies.
+     *
+     * @return the staged files, in the order of the given dependencies
+     */
+    List<File> stage(Collection<File> dependencies) {
+        if (!stagingDir.exists() && !stagingDir.mkdirs()) {
+            logger.warn("Failed to create dependency directory: {}", stagingDir.getAbsolutePath());
+            return Collections.emptyList();
+        }
+
+        final Properties previousIndex = readIndex();
+        final Properties index = new Properties();
+        final Map<String, File> wanted = new LinkedHashMap<>();
+
+        for (File dep : dependencies) {
+            if (!dep.isFile()) {
+                logger.debug("Skipping non-jar dependency: {}", dep.getAbsolutePath());
+                continue;
+            }
+
+            final String hash;
+            try {
+                hash = hash(dep, previousIndex, index);
+            } catch (IOException e) {
+                logger.warn("Failed to hash dependency: " + dep.getName(), e);
+                continue;
+            }
+
+            wanted.putIfAbsent(stagedName(dep, hash), dep);
+        }
+
+        File[] existingFiles = stagingDir.listFiles();
+        if (existingFiles != null) {
+            for (File existing : existingFiles) {
+                if (!wanted.containsKey(existing.getName()) && existing.delete()) {
+                    removed++;
+                }
+            }
+        }
+
+        final List<File> staged = new ArrayList<>(wanted.size());
+        for (Map.Entry<String, File> entry : wanted.entrySet()) {
+            final File destFile = new File(stagingDir, entry.getKey());
+            // Files.exists follows symbolic links, so a dangling link is replaced below
+            if (Files.exists(destFile.toPath())) {
+                reused++;
+                staged.add(destFile);
+                continue;
+            }
+
+            try {
+                Files.deleteIfExists(destFile.toPath());
+                link(entry.getValue().toPath(), destFile.toPath());
+                staged.add(destFile);
+            } catch (IOException e) {
+                logger.warn("Failed to stage dependency: " + entry.getValue().getName(), e);
+            }
+        }
+
+        writeIndex(index);
+        logger.lifecycle("Staged dependencies: " + staged.size() + " (" + reused + " unchanged, "
+                + linked + " linked, " + copied + " copied, " + removed + " removed)");
+        return staged;
+    }
+
+    int getLinked() {
+        return linked;
+    }
+
+    int getCopied() {
+        return copied;
+    }
+
+    int getReused() {
+        return reused;
+    }
+
+    int getRemoved() {
+        return removed;
+    }
+
+    long getBytesCopied() {
+        return bytesCopied;
+    }
+
+    private String hash(File dep, Properties previousIndex, Properties index) throws IOException {
+        final String key = dep.getAbsolutePath();
+        final String stamp = dep.length() + ":" + dep.lastModified() + ":";
+        final String previous = previousIndex.getProperty(key);
+
+        final String hash;
+        if (previous != null && previous.startsWith(stamp)) {
+            hash = previous.substring(stamp.length());
+        } else {
+            hash = FileHashes.sha256(dep);
+        }
+
+        index.setProperty(key, stamp + hash);
+        return hash;
+    }
+
+    private void link(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+            linked++;
+            return;
+        } catch (IOException | UnsupportedOperationException | SecurityException ignored) {
+            // Different file store, or hard links not permitted
+        }
+
+        try {
+            Files.createSymbolicLink(target, source.toAbsolutePath());
+            linked++;
+            return;
+        } catch (IOException | UnsupportedOperationException | SecurityException ignored) {
+            // Symbolic links need extra privileges on Windows
+        }
+
+        // A copy interrupted half way must never be left under its final name, where it would be reused
+        final Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        copied++;
+        bytesCopied += Files.size(target);
+    }
+
+    private static String stagedName(File dep, String hash) {
+        String name = dep.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : ".jar";
+        return base + "-" + hash.substring(0, HASH_PREFIX_LENGTH) + extension;
+    }
+
+    private Properties readIndex() {
+        Properties properties = new Properties();
+        if (indexFile.exists()) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(indexFile))) {
+                properties.load(in);
+            } catch (IOException e) {
+                logger.debug("Ignoring unreadable dependency index: " + e.getMessage());
+            }
+        }
+        return properties;
+    }
+
+    private void writeIndex(Properties index) {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(indexFile))) {
+            index.store(out, null);
+        } catch (IOException e) {
+            logger.debug("Failed to write dependency index: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package dev.skidfuscator.gradle;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Moves classes matching {@code class{...}} exclude patterns out of the input jar before
+ * obfuscation and merges them back into the obfuscated jar afterwards.
+ *
+ * Skidfuscator then never reads the excluded classes as input, it only sees them as a library.
+ * Entries are copied in their compressed form, nothing is inflated or deflated again.
+ */
+final class ExcludedClassSplitter {
+
+    private static final String CLASS_PATTERN_PREFIX = "class{";
+
+    private final List<Pattern> patterns;
+
+    private ExcludedClassSplitter(List<Pattern> patterns) {
+        this.patterns = patterns;
+    }
+
+    /**
+     * Creates a splitter for the class patterns among the given excludes, or returns {@code null}
+     * when there are none. Other kinds of excludes are left to Skidfuscator.
+     */
+    static ExcludedClassSplitter of(List<String> excludes) {
+        final List<Pattern> patterns = new ArrayList<>();
+        for (String exclude : excludes) {
+            final String trimmed = exclude.trim();
+            if (trimmed.startsWith(CLASS_PATTERN_PREFIX) && trimmed.endsWith("}")) {
+                try {
+                    patterns.add(Pattern.compile(trimmed.substring(CLASS_PATTERN_PREFIX.length(), trimmed.length() - 1)));
+                } catch (PatternSyntaxException ignored) {
+                    // Skidfuscator reports invalid patterns itself
+                }
+            }
+        }
+        return patterns.isEmpty() ? null : new ExcludedClassSplitter(patterns);
+    }
+
+    /**
+     * Writes the classes to obfuscate and the excluded classes into separate jars.
+     *
+     * @return the number of excluded classes
+     */
+    int split(File input, File included, File excluded) throws IOException {
+        int excludedCount = 0;
+        try (ZipFile zip = ZipFile.builder().setFile(input).get();
+             ZipArchiveOutputStream includedOut = new ZipArchiveOutputStream(included);
+             ZipArchiveOutputStream excludedOut = new ZipArchiveOutputStream(excluded)) {
+            final Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder();
+            while (entries.hasMoreElements()) {
+                final ZipArchiveEntry entry = entries.nextElement();
+                if (isExcluded(entry)) {
+                    excludedOut.addRawArchiveEntry(entry, zip.getRawInputStream(entry));
+                    excludedCount++;
+                } else {
+                    includedOut.addRawArchiveEntry(entry, zip.getRawInputStream(entry));
+                }
+            }
+        }
+        return excludedCount;
+    }
+
+    /**
+     * Appends the excluded classes to the obfuscated jar, keeping entries Skidfuscator wrote under the same name.
+     */
+    static void merge(File obfuscated, File excluded) throws IOException {
+        RawJars.merge(Arrays.asList(obfuscated, excluded), obfuscated);
+    }
+
+    private boolean isExcluded(ZipArchiveEntry entry) {
+        final String name = entry.getName();
+        if (entry.isDirectory() || !name.endsWith(".class") || name.startsWith("META-INF/")) {
+            return false;
+        }
+        final String className = name.substring(0, name.length() - ".class".length());
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(className).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,28 @@
+package dev.skidfuscator.gradle;
+
+/**
+ * How the Skidfuscator jar is run.
+ */
+public enum ExecutionMode {
+    /**
+     * A fresh {@code java -jar skidfuscator.jar} process per run.
+     */
+    FORK,
+    /**
+     * A Gradle worker process, kept alive and reused by later runs with the same settings.
+     * Falls back to {@link #FORK} when the worker's JVM cannot trap {@code System.exit}, i.e. on Java 24
+     * and newer, or when its version is unknown.
+     */
+    PROCESS,
+    /**
+     * An isolated classloader inside the Gradle daemon, the fastest but least isolated mode.
+     * Needs a daemon JVM that still allows trapping {@code System.exit}, i.e. Java 17 and older or
+     * {@code -Djava.security.manager=allow}, and falls back to {@link #FORK} otherwise.
+     */
+    CLASSLOADER,
+    /**
+     * A background JVM that keeps Skidfuscator loaded between builds and stops after being idle,
+     * see {@code daemonIdleTimeoutMinutes}. Falls back to {@link #FORK} when the daemon cannot be used.
+     */
+    DAEMON
+}
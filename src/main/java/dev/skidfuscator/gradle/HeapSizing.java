@@ -0,0 +1,167 @@
+package dev.skidfuscator.gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Predicts the heap a Skidfuscator run needs from the live heap of earlier runs.
+ *
+ * Every measured run adds a line of input bytes and heap bytes to a history file, see
+ * {@link #sample(Properties)} for which heap is recorded. The most
+ * recent runs are fitted to a fixed heap plus a part growing with the input size. The prediction
+ * is that line raised by the largest amount a run exceeded it, plus headroom for the garbage collector.
+ */
+final class HeapSizing {
+
+    private static final long MIN_HEAP_BYTES = 64L * 1024 * 1024;
+
+    private static final double HEADROOM = 1.5;
+    // A peak this close to the maximum heap only says the run filled the heap it was given
+    private static final double FULL_HEAP = 0.9;
+    private static final int SAMPLES = 10;
+    private static final int MAX_ENTRIES = 50;
+
+    // Shards of one build record into the same file, the file lock keeps out other builds
+    private static final Object LOCK = new Object();
+
+    private final File history;
+
+    HeapSizing(File history) {
+        this.history = history;
+    }
+
+    /**
+     * @return the predicted maximum heap in bytes, or {@code null} without any history
+     */
+    Long predict(long inputBytes) throws IOException {
+        final List<long[]> entries = read();
+        if (entries.isEmpty()) {
+            return null;
+        }
+        final List<long[]> samples = entries.subList(Math.max(0, entries.size() - SAMPLES), entries.size());
+        double meanInput = 0;
+        double meanPeak = 0;
+        for (long[] sample : samples) {
+            meanInput += sample[0];
+            meanPeak += sample[1];
+        }
+        meanInput /= samples.size();
+        meanPeak /= samples.size();
+
+        // Least squares, a shrinking heap for a growing input is noise
+        double covariance = 0;
+        double variance = 0;
+        for (long[] sample : samples) {
+            covariance += (sample[0] - meanInput) * (sample[1] - meanPeak);
+            variance += (sample[0] - meanInput) * (sample[0] - meanInput);
+        }
+        final double slope = variance == 0 ? 0 : Math.max(0, covariance / variance);
+        final double base = meanPeak - slope * meanInput;
+
+        double maxResidual = 0;
+        for (long[] sample : samples) {
+            maxResidual = Math.max(maxResidual, sample[1] - (base + slope * sample[0]));
+        }
+        final double estimate = base + slope * inputBytes + maxResidual;
+        return Math.max(MIN_HEAP_BYTES, (long) (estimate * HEADROOM));
+    }
+
+    /**
+     * Picks the heap to record from the stats of a {@link SkidfuscatorProbe}. That is the largest heap
+     * left after a garbage collection, or the peak heap when no collection ran and the peak stayed clear
+     * of the maximum heap. A peak grows with the heap a run is given, so recording it would make every
+     * prediction larger than the last.
+     *
+     * @return the heap in bytes, or {@code null} when the run tells nothing about the heap it needs
+     */
+    static Long sample(Properties stats) {
+        try {
+            if (stats.getProperty("liveHeapBytes") != null) {
+                return Long.parseLong(stats.getProperty("liveHeapBytes"));
+            }
+            if (stats.getProperty("peakHeapBytes") == null || stats.getProperty("maxHeapBytes") == null) {
+                return null;
+            }
+            final long peak = Long.parseLong(stats.getProperty("peakHeapBytes"));
+            final long max = Long.parseLong(stats.getProperty("maxHeapBytes"));
+            return max > 0 && peak < max * FULL_HEAP ? peak : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The maximum heap a JVM on this machine picks without {@code -Xmx}, a quarter of the physical
+     * memory, or 0 when the memory size is unknown.
+     */
+    @SuppressWarnings("deprecation") // getTotalMemorySize() needs Java 14
+    static long defaultMaxHeapBytes() {
+        final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize() / 4;
+        }
+        return 0;
+    }
+
+    @SuppressWarnings("try") // The file lock is only held, never used
+    void record(long inputBytes, long heapBytes) throws IOException {
+        synchronized (LOCK) {
+            try (FileChannel channel = lockFile(); FileLock ignored = channel.lock()) {
+                final List<String> lines = history.exists()
+                    ? new ArrayList<>(Files.readAllLines(history.toPath(), StandardCharsets.UTF_8))
+                        : new ArrayList<>();
+                lines.add(inputBytes + " " + heapBytes);
+                Files.write(history.toPath(), lines.subList(Math.max(0, lines.size() - MAX_ENTRIES), lines.size()),
+                        StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    @SuppressWarnings("try") // The file lock is only held, never used
+    private List<long[]> read() throws IOException {
+        final List<long[]> entries = new ArrayList<>();
+        synchronized (LOCK) {
+            if (!history.exists()) {
+                return entries;
+            }
+            try (FileChannel channel = lockFile(); FileLock ignored = channel.lock()) {
+                for (String line : Files.readAllLines(history.toPath(), StandardCharsets.UTF_8)) {
+                    final String[] parts = line.trim().split(" ");
+                    if (parts.length != 2) {
+                        continue;
+                    }
+                    try {
+                        entries.add(new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1])});
+                    } catch (NumberFormatException e) {
+                        // A damaged line only costs one sample
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    private FileChannel lockFile() throws IOException {
+        Files.createDirectories(history.getAbsoluteFile().getParentFile().toPath());
+        return FileChannel.open(new File(history.getPath() + ".lock").toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Formats a heap size for {@code -Xmx}, rounded up to whole megabytes.
+     */
+    static String format(long bytes) {
+        final long mb = 1024 * 1024;
+        return ((bytes + mb - 1) / mb) + "m";
+    }
+}
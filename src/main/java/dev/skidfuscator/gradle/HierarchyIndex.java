@@ -0,0 +1,113 @@
+package dev.skidfuscator.gradle;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.*;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * The class hierarchy declared by a single jar: for every class, its superclass and interfaces.
+ *
+ * Only class headers are read, method bodies are never parsed. Class names are kept in
+ * their internal form ({@code com/example/Foo}).
+ */
+final class HierarchyIndex {
+
+    private static final int MAGIC = 0x534B4849;
+    private static final int VERSION = 1;
+
+    private final Map<String, String[]> supertypes;
+
+    private HierarchyIndex(Map<String, String[]> supertypes) {
+        this.supertypes = supertypes;
+    }
+
+    /**
+     * Scans the class headers of a jar.
+     */
+    static HierarchyIndex read(File jar) throws IOException {
+        final Map<String, String[]> supertypes = new LinkedHashMap<>();
+        try (JarFile jarFile = new JarFile(jar)) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                // Multi-release variants and module descriptors would only shadow the base classes
+                if (!name.endsWith(".class") || name.startsWith("META-INF/") || name.endsWith("module-info.class")) {
+                    continue;
+                }
+
+                try (InputStream in = jarFile.getInputStream(entry)) {
+                    ClassReader reader = new ClassReader(in);
+                    String[] interfaces = reader.getInterfaces();
+                    String[] types = new String[interfaces.length + 1];
+                    types[0] = reader.getSuperName();
+                    System.arraycopy(interfaces, 0, types, 1, interfaces.length);
+                    supertypes.putIfAbsent(reader.getClassName(), types);
+                } catch (RuntimeException e) {
+                    // Not a parseable class file, nothing it could contribute to the hierarchy
+                }
+            }
+        }
+        return new HierarchyIndex(supertypes);
+    }
+
+    static HierarchyIndex load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported hierarchy index: " + file);
+            }
+            int size = in.readInt();
+            Map<String, String[]> supertypes = new LinkedHashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                String name = in.readUTF();
+                String[] types = new String[in.readInt()];
+                for (int j = 0; j < types.length; j++) {
+                    String type = in.readUTF();
+                    types[j] = type.isEmpty() ? null : type;
+                }
+                supertypes.put(name, types);
+            }
+            return new HierarchyIndex(supertypes);
+        }
+    }
+
+    void store(File file) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(supertypes.size());
+            for (Map.Entry<String, String[]> entry : supertypes.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                for (String type : entry.getValue()) {
+                    out.writeUTF(type == null ? "" : type);
+                }
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Failed to move " + tmp + " to " + file);
+            }
+        }
+    }
+
+    Set<String> getClassNames() {
+        return supertypes.keySet();
+    }
+
+    boolean contains(String className) {
+        return supertypes.containsKey(className);
+    }
+
+    /**
+     * @return the superclass followed by the interfaces, the superclass may be {@code null}
+     */
+    String[] getSupertypes(String className) {
+        return supertypes.get(className);
+    }
+}
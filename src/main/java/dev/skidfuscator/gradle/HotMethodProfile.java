@@ -0,0 +1,185 @@
+package dev.skidfuscator.gradle;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Ranks methods by the CPU samples a profile attributes to them directly.
+ *
+ * Reads async-profiler collapsed stacks, one {@code frame;frame;...;frame count} line per stack,
+ * or JFR recordings, which need a JVM that has the {@code jdk.jfr} module. Only the innermost frame
+ * of a stack counts, so methods are ranked by their own time and not by the time of their callees.
+ */
+final class HotMethodProfile {
+
+    private static final Pattern FRAME_SUFFIX = Pattern.compile("_\\[[a-z0-9]]$");
+
+    private final Map<String, Long> samples;
+    private final long totalSamples;
+
+    private HotMethodProfile(Map<String, Long> samples, long totalSamples) {
+        this.samples = samples;
+        this.totalSamples = totalSamples;
+    }
+
+    static HotMethodProfile read(File profile) throws IOException {
+        return profile.getName().toLowerCase(Locale.ROOT).endsWith(".jfr")
+                ? readJfr(profile.toPath())
+                : readCollapsed(profile.toPath());
+    }
+
+    private static HotMethodProfile readCollapsed(Path profile) throws IOException {
+        final Map<String, Long> samples = new HashMap<>();
+        long total = 0;
+        try (BufferedReader reader = Files.newBufferedReader(profile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int space = line.lastIndexOf(' ');
+                if (space <= 0) {
+                    continue;
+                }
+                final long count;
+                try {
+                    count = Long.parseLong(line.substring(space + 1).trim());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                total += count;
+
+                final String stack = line.substring(0, space);
+                final String method = javaMethod(stack.substring(stack.lastIndexOf(';') + 1));
+                if (method != null) {
+                    samples.merge(method, count, Long::sum);
+                }
+            }
+        }
+        return new HotMethodProfile(samples, total);
+    }
+
+    /**
+     * Reads the execution samples through reflection, the plugin itself targets Java 8.
+     */
+    private static HotMethodProfile readJfr(Path profile) throws IOException {
+        final Map<String, Long> samples = new HashMap<>();
+        long total = 0;
+        try {
+            final Class<?> recordingFile = Class.forName("jdk.jfr.consumer.RecordingFile");
+            final List<?> events = (List<?>) recordingFile.getMethod("readAllEvents", Path.class).invoke(null, profile);
+            for (Object event : events) {
+                final Object type = call(event, "getEventType");
+                if (!"jdk.ExecutionSample".equals(call(type, "getName"))) {
+                    continue;
+                }
+                total++;
+                final Object stackTrace = call(event, "getStackTrace");
+                final List<?> frames = stackTrace == null ? null : (List<?>) call(stackTrace, "getFrames");
+                if (frames == null || frames.isEmpty()) {
+                    continue;
+                }
+                final Object method = call(frames.get(0), "getMethod");
+                final String owner = (String) call(call(method, "getType"), "getName");
+                samples.merge(owner.replace('.', '/') + "." + call(method, "getName"), 1L, Long::sum);
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Reading JFR recordings needs Gradle to run on Java 11 or newer, "
+                    + "convert the recording to collapsed stacks instead");
+        } catch (InvocationTargetException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Failed to read JFR recording: " + e, e);
+        }
+        return new HotMethodProfile(samples, total);
+    }
+
+    private static Object call(Object target, String method) throws ReflectiveOperationException {
+        final Method getter = target.getClass().getMethod(method);
+        return getter.invoke(target);
+    }
+
+    /**
+     * Turns a frame such as {@code com/example/Foo.bar_[j]} or {@code com.example.Foo.bar(I)V}
+     * into {@code com/example/Foo.bar}, or returns {@code null} for frames that are not Java methods.
+     */
+    private static String javaMethod(String frame) {
+        String method = FRAME_SUFFIX.matcher(frame.trim()).replaceFirst("");
+        final int signature = method.indexOf('(');
+        if (signature != -1) {
+            method = method.substring(0, signature);
+        }
+        final int dot = method.lastIndexOf('.');
+        if (dot <= 0 || dot == method.length() - 1) {
+            return null;
+        }
+        return method.substring(0, dot).replace('.', '/') + method.substring(dot);
+    }
+
+    /**
+     * The hottest methods of the given classes, at most {@code top} of them and, when a minimum is
+     * given, only those with at least that share of all samples.
+     */
+    List<HotMethod> hottest(Set<String> classes, int top, Integer minPercent) {
+        final List<HotMethod> methods = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : samples.entrySet()) {
+            final int dot = entry.getKey().lastIndexOf('.');
+            final String owner = entry.getKey().substring(0, dot);
+            if (!classes.contains(owner)) {
+                continue;
+            }
+            final double percent = totalSamples == 0 ? 0 : entry.getValue() * 100.0 / totalSamples;
+            if (minPercent == null || percent >= minPercent) {
+                methods.add(new HotMethod(owner, entry.getKey().substring(dot + 1), entry.getValue(), percent));
+            }
+        }
+        methods.sort((a, b) -> Long.compare(b.samples, a.samples));
+        return methods.size() > top ? new ArrayList<>(methods.subList(0, top)) : methods;
+    }
+
+    long getTotalSamples() {
+        return totalSamples;
+    }
+
+    static final class HotMethod {
+        final String owner;
+        final String name;
+        final long samples;
+        final double percent;
+
+        private HotMethod(String owner, String name, long samples, double percent) {
+            this.owner = owner;
+            this.name = name;
+            this.samples = samples;
+            this.percent = percent;
+        }
+
+        /**
+         * The method as a Skidfuscator exemption pattern.
+         */
+        String exemption() {
+            return "class{^" + quote(owner) + "$} method{^" + quote(name) + "$}";
+        }
+
+        private static String quote(String literal) {
+            final StringBuilder quoted = new StringBuilder(literal.length() + 8);
+            for (char c : literal.toCharArray()) {
+                if ("\\.[]{}()*+-?^$|/".indexOf(c) != -1) {
+                    quoted.append('\\');
+                }
+                quoted.append(c);
+            }
+            return quoted.toString();
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package dev.skidfuscator.gradle;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits an input jar into shards that can be obfuscated by separate Skidfuscator processes.
+ *
+ * Classes are grouped by package, and packages whose classes extend or implement each other
+ * are kept in the same group, so every class hierarchy of the input ends up in a single shard.
+ * Groups are then distributed over the shards largest first, each going to the currently smallest
+ * shard. Resources stay in the first shard, so they are written to the merged output once.
+ *
+ * Only transformations that stay within a class hierarchy are safe to shard. References between
+ * shards are resolved through the other shards being passed as libraries, but a transformation that
+ * rewrites method signatures across hierarchies would leave callers in other shards unchanged, so
+ * sharding is refused while one of {@link #CROSS_CLASS_TRANSFORMERS} is enabled.
+ *
+ * Classes Skidfuscator adds to every shard, like its runtime helpers, are reconciled when the
+ * shards are merged, see {@link #merge(List, File)}.
+ */
+final class InputSharding {
+
+    /**
+     * Transformers that change method signatures or move code between classes, which breaks
+     * references from other shards, and from excluded classes split out of the input. Skidfuscator
+     * enables them unless they are configured disabled.
+     */
+    static final List<String> CROSS_CLASS_TRANSFORMERS = Collections.unmodifiableList(Arrays.asList(
+            "interprocedural",
+            "outliner"
+    ));
+
+    private final File input;
+    private final Set<String> entryNames;
+    private final Map<String, Integer> shardOfEntry;
+    private final int shards;
+
+    private InputSharding(File input, Set<String> entryNames, Map<String, Integer> shardOfEntry, int shards) {
+        this.input = input;
+        this.entryNames = entryNames;
+        this.shardOfEntry = shardOfEntry;
+        this.shards = shards;
+    }
+
+    /**
+     * @return the transformers of {@link #CROSS_CLASS_TRANSFORMERS} not disabled in the given configuration
+     */
+    @SuppressWarnings("unchecked")
+    static List<String> crossClassTransformers(Map<String, Object> transformers) {
+        final List<String> enabled = new ArrayList<>();
+        for (String name : CROSS_CLASS_TRANSFORMERS) {
+            final Object transformer = transformers.get(name);
+            if (!(transformer instanceof Map) || !Boolean.FALSE.equals(((Map<String, Object>) transformer).get("enabled"))) {
+                enabled.add(name);
+            }
+        }
+        return enabled;
+    }
+
+    /**
+     * Plans at most the requested number of shards, or returns {@code null} when the input cannot be split.
+     */
+    static InputSharding plan(File input, int requestedShards) throws IOException {
+        final HierarchyIndex hierarchy = HierarchyIndex.read(input);
+        final Map<String, String> parent = new HashMap<>();
+        for (String className : hierarchy.getClassNames()) {
+            final String pkg = packageOf(className);
+            parent.putIfAbsent(pkg, pkg);
+            for (String supertype : hierarchy.getSupertypes(className)) {
+                if (supertype != null && hierarchy.contains(supertype)) {
+                    union(parent, pkg, packageOf(supertype));
+                }
+            }
+        }
+
+        // Group sizes by compressed class bytes, a fair proxy for the work Skidfuscator does on them
+        final Map<String, Long> groupSizes = new HashMap<>();
+        final Map<String, String> groupOfEntry = new HashMap<>();
+        final Set<String> entryNames = new HashSet<>();
+        try (ZipFile zip = ZipFile.builder().setFile(input).get()) {
+            final Enumeration<ZipArchiveEntry> entries = zip.getEntries();
+            while (entries.hasMoreElements()) {
+                final ZipArchiveEntry entry = entries.nextElement();
+                final String name = entry.getName();
+                entryNames.add(name);
+                if (!name.endsWith(".class") || name.startsWith("META-INF/")) {
+                    continue;
+                }
+                final String className = name.substring(0, name.length() - ".class".length());
+                if (!hierarchy.contains(className)) {
+                    continue;
+                }
+                final String group = find(parent, packageOf(className));
+                groupOfEntry.put(name, group);
+                groupSizes.merge(group, Math.max(1, entry.getCompressedSize()), Long::sum);
+            }
+        }
+
+        final int shards = Math.min(requestedShards, groupSizes.size());
+        if (shards < 2) {
+            return null;
+        }
+
+        final List<Map.Entry<String, Long>> groups = new ArrayList<>(groupSizes.entrySet());
+        groups.sort(Collections.reverseOrder(Map.Entry.comparingByValue()));
+        final long[] shardSizes = new long[shards];
+        final Map<String, Integer> shardOfGroup = new HashMap<>();
+        for (Map.Entry<String, Long> group : groups) {
+            int smallest = 0;
+            for (int i = 1; i < shards; i++) {
+                if (shardSizes[i] < shardSizes[smallest]) {
+                    smallest = i;
+                }
+            }
+            shardSizes[smallest] += group.getValue();
+            shardOfGroup.put(group.getKey(), smallest);
+        }
+
+        final Map<String, Integer> shardOfEntry = new HashMap<>();
+        for (Map.Entry<String, String> entry : groupOfEntry.entrySet()) {
+            shardOfEntry.put(entry.getKey(), shardOfGroup.get(entry.getValue()));
+        }
+        return new InputSharding(input, entryNames, shardOfEntry, shards);
+    }
+
+    int getShards() {
+        return shards;
+    }
+
+    /**
+     * Writes one jar per shard into the given directory, copying entries in compressed form.
+     */
+    List<File> write(File dir) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create directory: " + dir.getAbsolutePath());
+        }
+
+        final List<File> jars = new ArrayList<>(shards);
+        final ZipArchiveOutputStream[] outs = new ZipArchiveOutputStream[shards];
+        try (ZipFile zip = ZipFile.builder().setFile(input).get()) {
+            for (int i = 0; i < shards; i++) {
+                final File jar = new File(dir, "shard-" + i + ".jar");
+                jars.add(jar);
+                outs[i] = new ZipArchiveOutputStream(jar);
+            }
+
+            final Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder();
+            while (entries.hasMoreElements()) {
+                final ZipArchiveEntry entry = entries.nextElement();
+                outs[shardOf(entry.getName())].addRawArchiveEntry(entry, zip.getRawInputStream(entry));
+            }
+        } finally {
+            close(outs);
+        }
+        return jars;
+    }
+
+    /**
+     * Merges the obfuscated shards, given in shard order, into the target jar.
+     *
+     * Every entry of the input is taken from the shard it was assigned to. Entries a shard added
+     * are kept once when every shard that added them added the same bytes. A class added with
+     * different bytes by several shards, or under the name of a class of another shard, keeps its name
+     * in the first shard only. In the other shards it is renamed, and the classes of those shards are
+     * remapped to the new name. A conflicting added resource is kept from the first shard only.
+     *
+     * @return the number of added classes that had to be renamed
+     */
+    int merge(List<File> outputs, File target) throws IOException {
+        // Added entry name to content digest to the shards adding it with that content, in shard order
+        final Map<String, Map<String, List<Integer>>> added = new LinkedHashMap<>();
+        for (int shard = 0; shard < outputs.size(); shard++) {
+            try (ZipFile zip = ZipFile.builder().setFile(outputs.get(shard)).get()) {
+                final Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder();
+                while (entries.hasMoreElements()) {
+                    final ZipArchiveEntry entry = entries.nextElement();
+                    if (entry.isDirectory() || isOwnEntry(entry.getName(), shard)) {
+                        continue;
+                    }
+                    final String digest;
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        digest = digest(in);
+                    }
+                    added.computeIfAbsent(entry.getName(), k -> new LinkedHashMap<>())
+                            .computeIfAbsent(digest, k -> new ArrayList<>())
+                            .add(shard);
+                }
+            }
+        }
+
+        // Decides which shard writes each added entry, and under which name
+        final List<Map<String, String>> writes = new ArrayList<>(outputs.size());
+        final List<Map<String, String>> renames = new ArrayList<>(outputs.size());
+        for (int shard = 0; shard < outputs.size(); shard++) {
+            writes.add(new HashMap<>());
+            renames.add(new HashMap<>());
+        }
+        final Set<String> taken = new HashSet<>(entryNames);
+        taken.addAll(added.keySet());
+        int renamed = 0;
+        for (Map.Entry<String, Map<String, List<Integer>>> entry : added.entrySet()) {
+            final String name = entry.getKey();
+            boolean keepName = !entryNames.contains(name);
+            for (List<Integer> sharing : entry.getValue().values()) {
+                final String targetName;
+                if (keepName) {
+                    targetName = name;
+                    keepName = false;
+                } else if (name.endsWith(".class")) {
+                    targetName = uniqueName(name, sharing.get(0), taken);
+                    renamed++;
+                    for (int shard : sharing) {
+                        renames.get(shard).put(internalName(name), internalName(targetName));
+                    }
+                } else {
+                    continue;
+                }
+                writes.get(sharing.get(0)).put(name, targetName);
+            }
+        }
+
+        final File merged = new File(target.getParentFile(), target.getName() + ".merge");
+        final Set<String> directories = new HashSet<>();
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(merged)) {
+            for (int shard = 0; shard < outputs.size(); shard++) {
+                final Map<String, String> shardWrites = writes.get(shard);
+                final Remapper remapper = renames.get(shard).isEmpty() ? null : new SimpleRemapper(renames.get(shard));
+                try (ZipFile zip = ZipFile.builder().setFile(outputs.get(shard)).get()) {
+                    final Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder();
+                    while (entries.hasMoreElements()) {
+                        final ZipArchiveEntry entry = entries.nextElement();
+                        final String name = entry.getName();
+                        final String targetName;
+                        if (entry.isDirectory()) {
+                            targetName = directories.add(name) ? name : null;
+                        } else {
+                            targetName = isOwnEntry(name, shard) ? name : shardWrites.get(name);
+                        }
+                        if (targetName == null) {
+                            continue;
+                        }
+
+                        if (remapper != null && name.endsWith(".class")) {
+                            final byte[] bytes;
+                            try (InputStream in = zip.getInputStream(entry)) {
+                                bytes = remap(in, remapper);
+                            }
+                            final ZipArchiveEntry remapped = new ZipArchiveEntry(targetName);
+                            remapped.setMethod(ZipArchiveEntry.DEFLATED);
+                            remapped.setTime(entry.getTime());
+                            out.putArchiveEntry(remapped);
+                            out.write(bytes);
+                            out.closeArchiveEntry();
+                        } else {
+                            out.addRawArchiveEntry(entry, zip.getRawInputStream(entry));
+                        }
+                    }
+                }
+            }
+        }
+        Files.move(merged.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return renamed;
+    }
+
+    private int shardOf(String entryName) {
+        final Integer shard = shardOfEntry.get(entryName);
+        return shard == null ? 0 : shard;
+    }
+
+    /**
+     * Whether the entry is one of the input entries assigned to the given shard.
+     */
+    private boolean isOwnEntry(String entryName, int shard) {
+        return entryNames.contains(entryName) && shardOf(entryName) == shard;
+    }
+
+    private static String uniqueName(String entryName, int shard, Set<String> taken) {
+        final String base = entryName.substring(0, entryName.length() - ".class".length()) + "$Shard" + shard;
+        String candidate = base + ".class";
+        for (int i = 2; !taken.add(candidate); i++) {
+            candidate = base + "_" + i + ".class";
+        }
+        return candidate;
+    }
+
+    private static String internalName(String entryName) {
+        return entryName.substring(0, entryName.length() - ".class".length());
+    }
+
+    private static byte[] remap(InputStream in, Remapper remapper) throws IOException {
+        final ClassReader reader = new ClassReader(in);
+        final ClassWriter writer = new ClassWriter(0);
+        reader.accept(new ClassRemapper(writer, remapper), 0);
+        return writer.toByteArray();
+    }
+
+    private static String digest(InputStream in) throws IOException {
+        final MessageDigest digest = FileHashes.sha256();
+        final byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return FileHashes.hex(digest.digest());
+    }
+
+    private static void close(ZipArchiveOutputStream[] outs) throws IOException {
+        IOException failure = null;
+        for (ZipArchiveOutputStream out : outs) {
+            if (out == null) {
+                continue;
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static String packageOf(String className) {
+        final int slash = className.lastIndexOf('/');
+        return slash == -1 ? "" : className.substring(0, slash);
+    }
+
+    private static String find(Map<String, String> parent, String pkg) {
+        String root = parent.computeIfAbsent(pkg, k -> k);
+        while (!root.equals(parent.get(root))) {
+            root = parent.get(root);
+        }
+        // Path compression keeps later lookups short
+        String current = pkg;
+        while (!current.equals(root)) {
+            final String next = parent.get(current);
+            parent.put(current, root);
+            current = next;
+        }
+        return root;
+    }
+
+    private static void union(Map<String, String> parent, String a, String b) {
+        final String rootA = find(parent, a);
+        final String rootB = find(parent, b);
+        if (!rootA.equals(rootB)) {
+            parent.put(rootB, rootA);
+        }
+    }
+}
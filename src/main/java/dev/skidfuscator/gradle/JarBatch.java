@@ -0,0 +1,124 @@
+package dev.skidfuscator.gradle;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Combines the classes of several jars into one input jar and distributes the obfuscated classes back.
+ *
+ * Only classes go into the combined jar. A class may be in more than one jar, as happens with shaded
+ * dependencies, as long as it is the same class in each. Every output keeps the resources and entry
+ * order of its own input. Classes Skidfuscator adds, which belong to no input, go into every output.
+ */
+final class JarBatch {
+
+    private final List<File> inputs;
+    private final Map<String, Long> classes;
+
+    private JarBatch(List<File> inputs, Map<String, Long> classes) {
+        this.inputs = inputs;
+        this.classes = classes;
+    }
+
+    static JarBatch combine(List<File> inputs, File combined) throws IOException {
+        final File dir = combined.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create directory: " + dir.getAbsolutePath());
+        }
+
+        // Class entry name to CRC, telling a shared class from two different classes of the same name
+        final Map<String, Long> classes = new HashMap<>();
+        final Map<String, File> origins = new HashMap<>();
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(combined)) {
+            for (File input : inputs) {
+                try (ZipFile zip = ZipFile.builder().setFile(input).get()) {
+                    final Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder();
+                    while (entries.hasMoreElements()) {
+                        final ZipArchiveEntry entry = entries.nextElement();
+                        if (!isClass(entry)) {
+                            continue;
+                        }
+                        final Long crc = classes.putIfAbsent(entry.getName(), entry.getCrc());
+                        if (crc == null) {
+                            origins.put(entry.getName(), input);
+                            out.addRawArchiveEntry(entry, zip.getRawInputStream(entry));
+                        } else if (crc != entry.getCrc()) {
+                            throw new IOException(entry.getName() + " differs between " + origins.get(entry.getName()).getName()
+                                    + " and " + input.getName() + ", a batch can only share identical classes");
+                        }
+                    }
+                }
+            }
+        }
+        return new JarBatch(new ArrayList<>(inputs), classes);
+    }
+
+    int getClassCount() {
+        return classes.size();
+    }
+
+    /**
+     * Writes each output from its input, with the classes taken from the obfuscated jar.
+     *
+     * @return the number of classes Skidfuscator added
+     */
+    int distribute(File obfuscated, List<File> outputs) throws IOException {
+        try (ZipFile result = ZipFile.builder().setFile(obfuscated).get()) {
+            final List<ZipArchiveEntry> added = new ArrayList<>();
+            final Enumeration<ZipArchiveEntry> resultEntries = result.getEntriesInPhysicalOrder();
+            while (resultEntries.hasMoreElements()) {
+                final ZipArchiveEntry entry = resultEntries.nextElement();
+                if (isClass(entry) && !classes.containsKey(entry.getName())) {
+                    added.add(entry);
+                }
+            }
+
+            for (int i = 0; i < inputs.size(); i++) {
+                final File output = outputs.get(i);
+                final File dir = output.getAbsoluteFile().getParentFile();
+                if (!dir.exists() && !dir.mkdirs()) {
+                    throw new IOException("Failed to create directory: " + dir.getAbsolutePath());
+                }
+                // Written aside first, an output may replace its own input
+                final File written = new File(dir, output.getName() + ".batch");
+                try (ZipFile input = ZipFile.builder().setFile(inputs.get(i)).get();
+                     ZipArchiveOutputStream out = new ZipArchiveOutputStream(written)) {
+                    final Enumeration<ZipArchiveEntry> entries = input.getEntriesInPhysicalOrder();
+                    while (entries.hasMoreElements()) {
+                        final ZipArchiveEntry entry = entries.nextElement();
+                        if (!isClass(entry)) {
+                            out.addRawArchiveEntry(entry, input.getRawInputStream(entry));
+                            continue;
+                        }
+                        final ZipArchiveEntry obfuscatedEntry = result.getEntry(entry.getName());
+                        if (obfuscatedEntry == null) {
+                            throw new IOException("The obfuscated jar is missing " + entry.getName()
+                                    + " of " + inputs.get(i).getName());
+                        }
+                        out.addRawArchiveEntry(obfuscatedEntry, result.getRawInputStream(obfuscatedEntry));
+                    }
+                    for (ZipArchiveEntry entry : added) {
+                        out.addRawArchiveEntry(entry, result.getRawInputStream(entry));
+                    }
+                }
+                Files.move(written.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return added.size();
+        }
+    }
+
+    private static boolean isClass(ZipArchiveEntry entry) {
+        return entry.getName().endsWith(".class") && !entry.getName().startsWith("META-INF/");
+    }
+}
@@ -0,0 +1,113 @@
+package dev.skidfuscator.gradle;
+
+import org.apache.commons.io.IOUtils;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Size, method count and constant pool size of every class in a jar.
+ */
+final class JarComposition {
+
+    private final long jarBytes;
+    private final Map<String, ClassStats> classes;
+
+    private JarComposition(long jarBytes, Map<String, ClassStats> classes) {
+        this.jarBytes = jarBytes;
+        this.classes = classes;
+    }
+
+    static JarComposition read(File jar) throws IOException {
+        final Map<String, ClassStats> classes = new TreeMap<>();
+        try (JarFile jarFile = new JarFile(jar)) {
+            final Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+                final String name = entry.getName();
+                if (!name.endsWith(".class") || name.startsWith("META-INF/")) {
+                    continue;
+                }
+                final byte[] bytes;
+                try (InputStream in = jarFile.getInputStream(entry)) {
+                    bytes = IOUtils.toByteArray(in);
+                }
+                classes.put(name.substring(0, name.length() - ".class".length()), ClassStats.of(bytes));
+            }
+        }
+        return new JarComposition(jar.length(), classes);
+    }
+
+    long getJarBytes() {
+        return jarBytes;
+    }
+
+    Map<String, ClassStats> getClasses() {
+        return classes;
+    }
+
+    long totalClassBytes() {
+        long total = 0;
+        for (ClassStats stats : classes.values()) {
+            total += stats.bytes;
+        }
+        return total;
+    }
+
+    long totalMethods() {
+        long total = 0;
+        for (ClassStats stats : classes.values()) {
+            total += stats.methods;
+        }
+        return total;
+    }
+
+    long totalConstants() {
+        long total = 0;
+        for (ClassStats stats : classes.values()) {
+            total += stats.constants;
+        }
+        return total;
+    }
+
+    static final class ClassStats {
+        final int bytes;
+        final int methods;
+        final int constants;
+
+        private ClassStats(int bytes, int methods, int constants) {
+            this.bytes = bytes;
+            this.methods = methods;
+            this.constants = constants;
+        }
+
+        private static ClassStats of(byte[] bytes) {
+            final ClassReader reader;
+            try {
+                reader = new ClassReader(bytes);
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                // Unreadable classes still count with their size
+                return new ClassStats(bytes.length, 0, 0);
+            }
+            final int[] methods = new int[1];
+            reader.accept(new ClassVisitor(Opcodes.ASM9) {
+                @Override
+                public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                    methods[0]++;
+                    return null;
+                }
+            }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            return new ClassStats(bytes.length, methods[0], reader.getItemCount());
+        }
+    }
+}
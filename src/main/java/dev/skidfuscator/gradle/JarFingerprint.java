@@ -0,0 +1,57 @@
+package dev.skidfuscator.gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Hashes the content of a jar independently of how it was packaged.
+ *
+ * Only entry names and uncompressed entry bytes are hashed, in sorted name order, so
+ * timestamps, entry ordering, compression and directory entries do not matter. Entry
+ * names come from the central directory and contents are streamed one entry at a
+ * time, so the jar is never held in memory.
+ */
+final class JarFingerprint {
+
+    private JarFingerprint() {
+    }
+
+    static String of(File jar) throws IOException {
+        final MessageDigest digest = FileHashes.sha256();
+        final MessageDigest entryDigest = FileHashes.sha256();
+        final byte[] buffer = new byte[64 * 1024];
+        try (ZipFile zip = new ZipFile(jar)) {
+            final List<String> names = new ArrayList<>(zip.size());
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory()) {
+                    names.add(entry.getName());
+                }
+            }
+            Collections.sort(names);
+
+            for (String name : names) {
+                try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        entryDigest.update(buffer, 0, read);
+                    }
+                }
+                digest.update(name.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(entryDigest.digest());
+            }
+        }
+        return FileHashes.hex(digest.digest());
+    }
+}
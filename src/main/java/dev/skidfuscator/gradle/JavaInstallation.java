@@ -0,0 +1,90 @@
+package dev.skidfuscator.gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/**
+ * Finds out which Java installation an executable belongs to and which version it is.
+ */
+final class JavaInstallation {
+
+    private JavaInstallation() {
+    }
+
+    /**
+     * The feature version of an installation, or -1 if it cannot be determined.
+     */
+    static int featureVersion(File javaHome) {
+        return javaHome == null ? -1 : featureVersion(release(javaHome));
+    }
+
+    /**
+     * Locates the installation an executable belongs to, following symbolic links and {@code PATH}.
+     */
+    static File home(String javaExecutable) {
+        File executable = new File(javaExecutable);
+        if (!executable.isAbsolute()) {
+            executable = null;
+            String path = System.getenv("PATH");
+            if (path != null) {
+                for (String dir : path.split(File.pathSeparator)) {
+                    for (String name : new String[]{javaExecutable, javaExecutable + ".exe"}) {
+                        File candidate = new File(dir, name);
+                        if (candidate.isFile()) {
+                            executable = candidate;
+                            break;
+                        }
+                    }
+                    if (executable != null) break;
+                }
+            }
+        }
+        if (executable == null) {
+            return null;
+        }
+
+        try {
+            File bin = executable.getCanonicalFile().getParentFile();
+            return bin == null ? null : bin.getParentFile();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    static String release(File javaHome) {
+        File release = new File(javaHome, "release");
+        if (!release.isFile()) {
+            return null;
+        }
+        try {
+            return new String(Files.readAllBytes(release.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    static int featureVersion(String release) {
+        if (release == null) {
+            return -1;
+        }
+        Properties properties = new Properties();
+        try {
+            properties.load(new StringReader(release));
+        } catch (IOException e) {
+            return -1;
+        }
+        String version = properties.getProperty("JAVA_VERSION", "").replace("\"", "");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        int end = 0;
+        while (end < version.length() && Character.isDigit(version.charAt(end))) {
+            end++;
+        }
+        return end == 0 ? -1 : Integer.parseInt(version.substring(0, end));
+    }
+}
@@ -0,0 +1,188 @@
+package dev.skidfuscator.gradle;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Rewrites the obfuscated jar with a chosen compression level and a reproducible layout.
+ *
+ * Entries are ordered by name, with the manifest first as {@code JarInputStream} expects, and get
+ * the same fixed timestamp Gradle uses for reproducible archives. Classes are deflated in parallel
+ * and written in order. Resources that are already deflated are copied in compressed form, level 0
+ * stores every entry.
+ */
+final class OutputRepackager {
+
+    /**
+     * 1980-02-01 00:00 local time, as used by Gradle's {@code preserveFileTimestamps = false}.
+     */
+    private static final long FIXED_TIME = new GregorianCalendar(1980, Calendar.FEBRUARY, 1).getTimeInMillis();
+
+    /**
+     * Entries compressed per round, bounds the compressed data held in memory.
+     */
+    private static final int BATCH_SIZE = 512;
+
+    private final int level;
+    private final int parallelism;
+
+    /**
+     * @param level 0 to store entries, 1 to 9 to deflate them with that level
+     */
+    OutputRepackager(int level, int parallelism) {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("Compression level must be between 0 and 9, was " + level);
+        }
+        this.level = level;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Repackages the jar in place.
+     */
+    void repackage(File jar) throws IOException {
+        final File repackaged = new File(jar.getParentFile(), jar.getName() + ".repack");
+        final ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try (ZipFile zip = ZipFile.builder().setFile(jar).get();
+             ZipArchiveOutputStream out = new ZipArchiveOutputStream(repackaged)) {
+            final List<ZipArchiveEntry> entries = new ArrayList<>();
+            final Enumeration<ZipArchiveEntry> all = zip.getEntries();
+            while (all.hasMoreElements()) {
+                entries.add(all.nextElement());
+            }
+            entries.sort(Comparator.comparing(OutputRepackager::sortKey));
+
+            for (int start = 0; start < entries.size(); start += BATCH_SIZE) {
+                final List<ZipArchiveEntry> batch = entries.subList(start, Math.min(entries.size(), start + BATCH_SIZE));
+                final List<Future<Compressed>> compressed = new ArrayList<>(batch.size());
+                for (ZipArchiveEntry entry : batch) {
+                    compressed.add(copiesRaw(entry) ? null : pool.submit(() -> compress(zip, entry)));
+                }
+
+                for (int i = 0; i < batch.size(); i++) {
+                    final ZipArchiveEntry entry = batch.get(i);
+                    if (compressed.get(i) == null) {
+                        final ZipArchiveEntry target = newEntry(entry.getName());
+                        target.setMethod(entry.getMethod());
+                        target.setCrc(entry.getCrc());
+                        target.setSize(entry.getSize());
+                        target.setCompressedSize(entry.getCompressedSize());
+                        out.addRawArchiveEntry(target, zip.getRawInputStream(entry));
+                    } else {
+                        final Compressed result = compressed.get(i).get();
+                        out.addRawArchiveEntry(result.entry, new ByteArrayInputStream(result.data));
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while repackaging " + jar, e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        Files.move(repackaged.toPath(), jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Deflated resources are kept as they are, classes are always recompressed with the chosen level.
+     */
+    private boolean copiesRaw(ZipArchiveEntry entry) {
+        return level != 0
+                && entry.getMethod() == ZipEntry.DEFLATED
+                && !entry.getName().endsWith(".class");
+    }
+
+    private Compressed compress(ZipFile zip, ZipArchiveEntry entry) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) Math.max(64, Math.min(entry.getSize(), 1 << 24)));
+        try (InputStream in = zip.getInputStream(entry)) {
+            final byte[] chunk = new byte[8192];
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+            }
+        }
+        final byte[] content = buffer.toByteArray();
+
+        final ZipArchiveEntry target = newEntry(entry.getName());
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+        target.setCrc(crc.getValue());
+        target.setSize(content.length);
+        if (level == 0 || entry.isDirectory()) {
+            target.setMethod(ZipEntry.STORED);
+            target.setCompressedSize(content.length);
+            return new Compressed(target, content);
+        }
+        final byte[] deflated = deflate(content);
+        target.setMethod(ZipEntry.DEFLATED);
+        target.setCompressedSize(deflated.length);
+        return new Compressed(target, deflated);
+    }
+
+    private byte[] deflate(byte[] content) {
+        final Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, content.length / 2));
+            final byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static ZipArchiveEntry newEntry(String name) {
+        final ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setTime(FIXED_TIME);
+        return entry;
+    }
+
+    private static final class Compressed {
+        private final ZipArchiveEntry entry;
+        private final byte[] data;
+
+        private Compressed(ZipArchiveEntry entry, byte[] data) {
+            this.entry = entry;
+            this.data = data;
+        }
+    }
+
+    private static String sortKey(ZipArchiveEntry entry) {
+        final String name = entry.getName();
+        if (name.equals("META-INF/")) {
+            return "0";
+        }
+        if (name.equalsIgnoreCase("META-INF/MANIFEST.MF")) {
+            return "1";
+        }
+        return "2" + name;
+    }
+}
@@ -0,0 +1,147 @@
+package dev.skidfuscator.gradle;
+
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigRenderOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Collects phase timings and counters of a single obfuscation run.
+ *
+ * The report is written as JSON to the task's working directory, so obfuscation cost can be
+ * compared between builds, and summarized in a single lifecycle line. A bounded history of
+ * reports is kept next to it, one JSON object per line.
+ */
+final class PerformanceReport {
+
+    private static final Pattern TOTAL_MILLIS = Pattern.compile("\"totalMillis\"\\s*:\\s*(\\d+)");
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private final Map<String, Object> counters = new LinkedHashMap<>();
+    private String outcome = "failed";
+    private long previousMillis = -1;
+
+    /**
+     * Records the time elapsed since the given {@link System#nanoTime()} value under the given phase.
+     */
+    synchronized void phase(String name, long phaseStartNanos) {
+        phases.merge(name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - phaseStartNanos), Long::sum);
+    }
+
+    synchronized void counter(String name, Object value) {
+        if (value != null) {
+            counters.put(name, value);
+        }
+    }
+
+    /**
+     * Records the value unless a larger one was recorded before, for measurements taken per process.
+     */
+    synchronized void max(String name, long value) {
+        Object previous = counters.get(name);
+        if (!(previous instanceof Number) || ((Number) previous).longValue() < value) {
+            counters.put(name, value);
+        }
+    }
+
+    synchronized void outcome(String outcome) {
+        this.outcome = outcome;
+    }
+
+    synchronized long totalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    synchronized Map<String, Long> getPhases() {
+        return phases;
+    }
+
+    synchronized Map<String, Object> getCounters() {
+        return counters;
+    }
+
+    synchronized void write(File file) throws IOException {
+        Files.write(file.toPath(), render(true).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends this report as a single line to the history file, keeping only the most recent entries.
+     *
+     * Before appending, the duration of the previous successful obfuscation is read from the
+     * history, so {@link #summary()} can tell how this run compares to it.
+     */
+    synchronized void appendTo(File history, int maxEntries) throws IOException {
+        final List<String> lines = history.exists()
+                ? new ArrayList<>(Files.readAllLines(history.toPath(), StandardCharsets.UTF_8))
+                : new ArrayList<>();
+
+        for (int i = lines.size() - 1; i >= 0 && previousMillis < 0; i--) {
+            if (lines.get(i).contains("\"outcome\":\"obfuscated\"")) {
+                Matcher matcher = TOTAL_MILLIS.matcher(lines.get(i));
+                if (matcher.find()) {
+                    previousMillis = Long.parseLong(matcher.group(1));
+                }
+            }
+        }
+
+        lines.add(render(false));
+        final List<String> kept = lines.subList(Math.max(0, lines.size() - maxEntries), lines.size());
+        Files.write(history.toPath(), kept, StandardCharsets.UTF_8);
+    }
+
+    private String render(boolean formatted) {
+        final Map<String, Object> root = new LinkedHashMap<>();
+        root.put("timestamp", System.currentTimeMillis());
+        root.put("outcome", outcome);
+        root.put("totalMillis", totalMillis());
+        root.put("phases", phases);
+        root.put("counters", counters);
+
+        return ConfigFactory.parseMap(root).root().render(
+                ConfigRenderOptions.concise().setFormatted(formatted)
+        );
+    }
+
+    /**
+     * One line overview, e.g. {@code Skidfuscator took 12.4s (analysis 1.1s, skidfuscator 11.0s), peak RSS 812 MB}.
+     */
+    synchronized String summary() {
+        final StringBuilder line = new StringBuilder("Skidfuscator took ").append(seconds(totalMillis()));
+        if (!phases.isEmpty()) {
+            line.append(" (");
+            boolean first = true;
+            for (Map.Entry<String, Long> phase : phases.entrySet()) {
+                if (!first) line.append(", ");
+                line.append(phase.getKey()).append(' ').append(seconds(phase.getValue()));
+                first = false;
+            }
+            line.append(')');
+        }
+        Object peakRss = counters.get("childPeakRssBytes");
+        if (peakRss instanceof Number) {
+            line.append(", peak RSS ").append(((Number) peakRss).longValue() / (1024 * 1024)).append(" MB");
+        }
+        if (previousMillis > 0 && "obfuscated".equals(outcome)) {
+            long change = Math.round((totalMillis() - previousMillis) * 100.0 / previousMillis);
+            line.append(", ").append(Math.abs(change)).append(change >= 0 ? "% slower" : "% faster")
+                    .append(" than the previous run");
+        }
+        return line.toString();
+    }
+
+    private static String seconds(long millis) {
+        return String.format(Locale.ROOT, "%.1fs", millis / 1000.0);
+    }
+}
@@ -0,0 +1,109 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.BuildCancelledException;
+import org.gradle.api.GradleException;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Runs the preparation steps of a task as a small graph of stages on a thread pool.
+ *
+ * A stage starts as soon as the stages it depends on are done. The first stage to fail fails every
+ * {@link #await} with its exception, even one waiting on an unrelated stage. An interrupted wait, which
+ * is how Gradle cancels a running task, and {@link #close} interrupt the stages that are still running.
+ */
+final class PreparationStages implements AutoCloseable {
+
+    private final ExecutorService pool;
+    private final List<CompletableFuture<?>> stages = new CopyOnWriteArrayList<>();
+    private final CompletableFuture<Void> failure = new CompletableFuture<>();
+
+    PreparationStages(int parallelism) {
+        this.pool = Executors.newFixedThreadPool(parallelism);
+    }
+
+    <T> CompletableFuture<T> start(Callable<T> work) {
+        return track(CompletableFuture.supplyAsync(() -> call(work), pool));
+    }
+
+    <A, B, R> CompletableFuture<R> both(CompletableFuture<A> first, CompletableFuture<B> second, BiFunction<A, B, R> work) {
+        return track(first.thenCombineAsync(second, work, pool));
+    }
+
+    /**
+     * Waits for a stage and returns its result, or rethrows the first failure of any stage.
+     */
+    <T> T await(CompletableFuture<T> stage) {
+        try {
+            CompletableFuture.anyOf(stage, failure).get();
+            return stage.join();
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new BuildCancelledException("Cancelled while preparing Skidfuscator", e);
+        } catch (ExecutionException | CompletionException e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        cancel();
+        try {
+            // Stages write into the working directory, let them stop before the task goes on
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void cancel() {
+        for (CompletableFuture<?> stage : stages) {
+            stage.cancel(false);
+        }
+        pool.shutdownNow();
+    }
+
+    private <T> CompletableFuture<T> track(CompletableFuture<T> stage) {
+        stages.add(stage);
+        stage.whenComplete((result, error) -> {
+            if (error != null) {
+                failure.completeExceptionally(error);
+            }
+        });
+        return stage;
+    }
+
+    private static <T> T call(Callable<T> work) {
+        try {
+            return work.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new GradleException(cause.getMessage(), cause);
+    }
+}
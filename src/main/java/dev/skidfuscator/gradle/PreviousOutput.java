@@ -0,0 +1,62 @@
+package dev.skidfuscator.gradle;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Keeps a copy of the last obfuscated jar together with the key of the run that produced it.
+ *
+ * The key covers the input jar's class content and every setting passed to Skidfuscator,
+ * so a repackaged but otherwise identical input can be answered with the previous result.
+ */
+final class PreviousOutput {
+
+    private final File jar;
+    private final File manifest;
+
+    PreviousOutput(File dir) {
+        this.jar = new File(dir, "output.jar");
+        this.manifest = new File(dir, "manifest.properties");
+    }
+
+    /**
+     * Copies the previous output to the target if it was produced for the same key.
+     *
+     * @return whether the previous output was restored
+     */
+    boolean restore(String key, File target) throws IOException {
+        if (!jar.exists() || !manifest.exists()) {
+            return false;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(manifest)) {
+            properties.load(in);
+        }
+        if (!key.equals(properties.getProperty("key"))) {
+            return false;
+        }
+
+        Files.copy(jar.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    void record(String key, File output) throws IOException {
+        File dir = jar.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create directory: " + dir.getAbsolutePath());
+        }
+
+        // Drop the manifest first, so an interrupted copy is never mistaken for a valid output
+        Files.deleteIfExists(manifest.toPath());
+        Files.copy(output.toPath(), jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        Properties properties = new Properties();
+        properties.setProperty("key", key);
+        try (OutputStream out = new FileOutputStream(manifest)) {
+            properties.store(out, null);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package dev.skidfuscator.gradle;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Combines jars by copying their entries in compressed form, without inflating or deflating them again.
+ */
+final class RawJars {
+
+    private RawJars() {
+    }
+
+    /**
+     * Writes the entries of all sources into the target, the first source holding an entry name wins.
+     * The target may be one of the sources.
+     */
+    static void merge(List<File> sources, File target) throws IOException {
+        final File merged = new File(target.getParentFile(), target.getName() + ".merge");
+        final Set<String> names = new HashSet<>();
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(merged)) {
+            for (File source : sources) {
+                try (ZipFile zip = ZipFile.builder().setFile(source).get()) {
+                    final Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder();
+                    while (entries.hasMoreElements()) {
+                        final ZipArchiveEntry entry = entries.nextElement();
+                        if (names.add(entry.getName())) {
+                            out.addRawArchiveEntry(entry, zip.getRawInputStream(entry));
+                        }
+                    }
+                }
+            }
+        }
+        Files.move(merged.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,28 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.tasks.Nested;
+
+import java.util.List;
+
+/**
+ * Obfuscates several jars, possibly of different projects, in a single Skidfuscator run.
+ *
+ * The classes of all jars are combined into one input and their libraries into one classpath, so
+ * the JVM starts and the libraries load once for the whole batch instead of once per jar. The
+ * obfuscated classes are then written back into one output per jar, see {@link JarBatch}.
+ */
+public abstract class SkidfuscatorBatchTask extends SkidfuscatorTask {
+
+    public SkidfuscatorBatchTask() {
+        onlyIf("jars are configured in the batch", task -> !getBatchJars().get().isEmpty());
+    }
+
+    @Nested
+    public abstract ListProperty<BatchJarSpec> getBatchJars();
+
+    @Override
+    protected List<BatchJarSpec> batchJars() {
+        return getBatchJars().get();
+    }
+}
@@ -0,0 +1,331 @@
+package dev.skidfuscator.gradle;
+
+import com.typesafe.config.ConfigFactory;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.process.ExecOperations;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.jar.JarFile;
+
+/**
+ * Runs the project's JMH benchmarks against the original and the obfuscated jar and compares them.
+ *
+ * The benchmarks come from a source set, by default {@code jmh}, which has to be set up with the JMH
+ * dependencies and annotation processor. Each jar is benchmarked in its own JVM with the {@code gc}
+ * profiler, and the score and normalized allocation rate of every benchmark are compared. The task
+ * fails when the obfuscated jar is slower, or allocates more, than the configured thresholds allow
+ * even after both results are moved towards each other by their error, so noise alone never fails it.
+ */
+public abstract class SkidfuscatorBenchmarkTask extends DefaultTask {
+
+    private static final String JMH_MAIN = "org.openjdk.jmh.Main";
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    @Inject
+    protected abstract ExecOperations getExecOperations();
+
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getOriginalJar();
+
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getObfuscatedJar();
+
+    /**
+     * The benchmark classes and JMH, without the classes of the jars being compared.
+     */
+    @Classpath
+    public abstract ConfigurableFileCollection getBenchmarkClasspath();
+
+    /**
+     * Regular expression selecting the benchmarks to run, all of them when empty.
+     */
+    @Input
+    public abstract Property<String> getIncludes();
+
+    /**
+     * Extra JMH arguments, such as {@code -f 1 -wi 3 -i 5}.
+     */
+    @Input
+    public abstract ListProperty<String> getJmhArgs();
+
+    /**
+     * How much worse in percent a benchmark score of the obfuscated jar may be, beyond the error of both scores.
+     */
+    @Input
+    public abstract Property<Integer> getMaxRegressionPercent();
+
+    /**
+     * How much more in percent a benchmark of the obfuscated jar may allocate per operation, beyond the error
+     * of both measurements. Not checked when absent.
+     */
+    @Optional
+    @Input
+    public abstract Property<Integer> getMaxAllocationIncreasePercent();
+
+    @Input
+    public abstract Property<String> getJavaExecutable();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getReportDirectory();
+
+    @TaskAction
+    public void compare() {
+        final Logger logger = getLogger();
+        final File reportDir = getReportDirectory().get().getAsFile();
+        final List<File> classpath = new ArrayList<>(getBenchmarkClasspath().getFiles());
+        if (!containsJmh(classpath)) {
+            throw new GradleException("The benchmark classpath does not contain JMH (" + JMH_MAIN + "). "
+                    + "Add org.openjdk.jmh:jmh-core and jmh-generator-annprocess to the benchmark source set.");
+        }
+
+        logger.lifecycle("Benchmarking the original jar...");
+        final Map<String, BenchmarkResult> original = run("original", getOriginalJar().get().getAsFile(), classpath, reportDir);
+        logger.lifecycle("Benchmarking the obfuscated jar...");
+        final Map<String, BenchmarkResult> obfuscated = run("obfuscated", getObfuscatedJar().get().getAsFile(), classpath, reportDir);
+
+        final int maxRegression = getMaxRegressionPercent().getOrElse(10);
+        final Integer maxAllocationIncrease = getMaxAllocationIncreasePercent().getOrNull();
+        final List<String> lines = new ArrayList<>();
+        final List<String> failures = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "%-60s %26s %26s %9s %12s", "Benchmark", "Original", "Obfuscated", "Change", "Allocation"));
+        for (Map.Entry<String, BenchmarkResult> entry : original.entrySet()) {
+            final BenchmarkResult before = entry.getValue();
+            final BenchmarkResult after = obfuscated.get(entry.getKey());
+            if (after == null) {
+                failures.add(entry.getKey() + " did not run against the obfuscated jar");
+                continue;
+            }
+
+            // Positive is worse, throughput falls while average times rise
+            final double change = percent(before.score, after.score);
+            final double regression = significantRegression(before.score, before.scoreError, after.score, after.scoreError,
+                    before.higherIsBetter());
+            final Double allocationChange = before.allocation == null || after.allocation == null
+                    ? null
+                    : percent(before.allocation, after.allocation);
+
+            lines.add(String.format(Locale.ROOT, "%-60s %26s %26s %+8.1f%% %12s", entry.getKey(),
+                    format(before.score, before.scoreError, before.unit), format(after.score, after.scoreError, after.unit), change,
+                    allocationChange == null ? "-" : String.format(Locale.ROOT, "%+.1f%%", allocationChange)));
+
+            if (regression > maxRegression) {
+                failures.add(String.format(Locale.ROOT, "%s is %.1f%% slower beyond the error margins, at most %d%% is allowed",
+                        entry.getKey(), regression, maxRegression));
+            }
+            if (maxAllocationIncrease != null && allocationChange != null) {
+                final double allocationIncrease = significantRegression(before.allocation, before.allocationError,
+                        after.allocation, after.allocationError, false);
+                if (allocationIncrease > maxAllocationIncrease) {
+                    failures.add(String.format(Locale.ROOT, "%s allocates %.1f%% more beyond the error margins, at most %d%% is allowed",
+                            entry.getKey(), allocationIncrease, maxAllocationIncrease));
+                }
+            }
+        }
+
+        try {
+            Files.write(new File(reportDir, "comparison.txt").toPath(), lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("Failed to write the benchmark comparison: " + e.getMessage());
+        }
+        for (String line : lines) {
+            logger.lifecycle(line);
+        }
+
+        if (!failures.isEmpty()) {
+            throw new GradleException("Obfuscation regressed " + failures.size() + " benchmarks:\n  "
+                    + String.join("\n  ", failures));
+        }
+    }
+
+    private Map<String, BenchmarkResult> run(String name, File jar, List<File> benchmarkClasspath, File reportDir) {
+        final File results = new File(reportDir, name + ".json");
+        final File log = new File(reportDir, name + ".log");
+
+        final List<File> classpath = new ArrayList<>(benchmarkClasspath.size() + 1);
+        classpath.add(jar);
+        classpath.addAll(benchmarkClasspath);
+        final StringBuilder path = new StringBuilder();
+        for (File file : classpath) {
+            if (path.length() > 0) {
+                path.append(File.pathSeparatorChar);
+            }
+            path.append(file.getAbsolutePath());
+        }
+
+        final List<String> args = new ArrayList<>();
+        args.add("-cp");
+        args.add(path.toString());
+        args.add(JMH_MAIN);
+        final String includes = getIncludes().getOrElse("");
+        if (!includes.trim().isEmpty()) {
+            args.add(includes.trim());
+        }
+        args.add("-prof");
+        args.add("gc");
+        args.add("-rf");
+        args.add("json");
+        args.add("-rff");
+        args.add(results.getAbsolutePath());
+        args.addAll(getJmhArgs().getOrElse(Collections.emptyList()));
+
+        try (OutputStream out = new FileOutputStream(log)) {
+            final int status = getExecOperations().exec(spec -> {
+                spec.setExecutable(getJavaExecutable().getOrElse("java"));
+                spec.setArgs(args);
+                spec.setStandardOutput(out);
+                spec.setErrorOutput(out);
+                spec.setIgnoreExitValue(true);
+            }).getExitValue();
+            if (status != 0) {
+                throw new GradleException("JMH exited with status " + status + " for the " + name + " jar, see " + log.getAbsolutePath());
+            }
+            return parse(results);
+        } catch (IOException e) {
+            throw new GradleException("Failed to benchmark the " + name + " jar: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads JMH's JSON results, keyed by benchmark, mode and parameters.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, BenchmarkResult> parse(File results) throws IOException {
+        final String json = new String(Files.readAllBytes(results.toPath()), StandardCharsets.UTF_8);
+        // The results are a JSON array, which a config document cannot have at its root
+        final List<Object> runs = (List<Object>) ConfigFactory.parseString("{\"runs\":" + json + "}").root().unwrapped().get("runs");
+
+        final Map<String, BenchmarkResult> parsed = new LinkedHashMap<>();
+        for (Object value : runs) {
+            final Map<String, Object> run = (Map<String, Object>) value;
+            final String mode = String.valueOf(run.get("mode"));
+            final StringBuilder key = new StringBuilder(String.valueOf(run.get("benchmark"))).append(" ").append(mode);
+            final Object params = run.get("params");
+            if (params instanceof Map) {
+                key.append(" ").append(params);
+            }
+
+            final Map<String, Object> primary = (Map<String, Object>) run.get("primaryMetric");
+            Double allocation = null;
+            double allocationError = 0;
+            final Object secondary = run.get("secondaryMetrics");
+            if (secondary instanceof Map) {
+                for (Map.Entry<String, Object> metric : ((Map<String, Object>) secondary).entrySet()) {
+                    // Older JMH versions prefix profiler metrics with a middle dot
+                    if (metric.getKey().endsWith(ALLOCATION_METRIC) && metric.getValue() instanceof Map) {
+                        final Map<String, Object> allocationMetric = (Map<String, Object>) metric.getValue();
+                        allocation = ((Number) allocationMetric.get("score")).doubleValue();
+                        allocationError = error(allocationMetric.get("scoreError"));
+                    }
+                }
+            }
+            parsed.put(key.toString(), new BenchmarkResult(mode, ((Number) primary.get("score")).doubleValue(),
+                    error(primary.get("scoreError")), String.valueOf(primary.get("scoreUnit")), allocation, allocationError));
+        }
+        return parsed;
+    }
+
+    /**
+     * JMH writes {@code "NaN"} for the error of a single measurement, which counts as no error.
+     */
+    private static double error(Object scoreError) {
+        if (scoreError instanceof Number && !Double.isNaN(((Number) scoreError).doubleValue())) {
+            return Math.abs(((Number) scoreError).doubleValue());
+        }
+        return 0;
+    }
+
+    /**
+     * How much worse in percent of the original score the obfuscated score is after moving both
+     * towards each other by their error. Zero or less when the confidence intervals overlap.
+     */
+    static double significantRegression(double before, double beforeError, double after, double afterError,
+                                        boolean higherIsBetter) {
+        if (before == 0) {
+            return 0;
+        }
+        final double gap = higherIsBetter
+                ? (before - beforeError) - (after + afterError)
+                : (after - afterError) - (before + beforeError);
+        return gap / Math.abs(before) * 100;
+    }
+
+    private static boolean containsJmh(List<File> classpath) {
+        final String entry = JMH_MAIN.replace('.', '/') + ".class";
+        for (File file : classpath) {
+            if (file.isDirectory()) {
+                if (new File(file, entry).isFile()) {
+                    return true;
+                }
+            } else if (file.isFile()) {
+                try (JarFile jar = new JarFile(file)) {
+                    if (jar.getEntry(entry) != null) {
+                        return true;
+                    }
+                } catch (IOException ignored) {
+                    // Not a jar
+                }
+            }
+        }
+        return false;
+    }
+
+    private static double percent(double before, double after) {
+        return before == 0 ? 0 : (after - before) / before * 100;
+    }
+
+    private static String format(double score, double error, String unit) {
+        return String.format(Locale.ROOT, "%.3f \u00b1 %.3f %s", score, error, unit);
+    }
+
+    private static final class BenchmarkResult {
+        private final String mode;
+        private final double score;
+        private final double scoreError;
+        private final String unit;
+        private final Double allocation;
+        private final double allocationError;
+
+        private BenchmarkResult(String mode, double score, double scoreError, String unit, Double allocation,
+                                double allocationError) {
+            this.mode = mode;
+            this.score = score;
+            this.scoreError = scoreError;
+            this.unit = unit;
+            this.allocation = allocation;
+            this.allocationError = allocationError;
+        }
+
+        boolean higherIsBetter() {
+            return "thrpt".equals(mode);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * State shared by every {@link SkidfuscatorTask} of a build.
+ *
+ * Verified Skidfuscator jars are remembered per version, so each version is checked or downloaded
+ * once per build. Hierarchy indexes of libraries are shared between projects, keyed like the
+ * staged libraries by content. Obfuscations are limited to a number of concurrent slots,
+ * with large input jars taking more than one slot since Skidfuscator's memory use grows with them.
+ *
+ * The service is configured through Gradle properties, as it is shared by all projects:
+ * <pre>
+ * skidfuscator.maxParallelObfuscations=2     # slots, defaults to half the available processors
+ * skidfuscator.bytesPerObfuscationSlot=64m   # input size covered by one slot
+ * </pre>
+ */
+public abstract class SkidfuscatorBuildService implements BuildService<SkidfuscatorBuildService.Parameters> {
+
+    static final String NAME = "skidfuscator";
+
+    public interface Parameters extends BuildServiceParameters {
+        Property<Integer> getMaxParallelObfuscations();
+
+        Property<Long> getBytesPerObfuscationSlot();
+    }
+
+    private final ConcurrentMap<String, File> jars = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Object> jarLocks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, HierarchyIndex> indexes = new ConcurrentHashMap<>();
+    private final Semaphore slots;
+    private final int maxSlots;
+
+    public SkidfuscatorBuildService() {
+        this.maxSlots = Math.max(1, getParameters().getMaxParallelObfuscations().get());
+        this.slots = new Semaphore(maxSlots, true);
+    }
+
+    /**
+     * Resolves a Skidfuscator jar through the given distributions, at most once per version and checksum.
+     */
+    File resolveJar(SkidfuscatorDistributions distributions, String version, String checksum) throws IOException {
+        final String key = version + "@" + checksum;
+        File jar = jars.get(key);
+        if (jar != null && jar.isFile()) {
+            return jar;
+        }
+
+        synchronized (jarLocks.computeIfAbsent(key, k -> new Object())) {
+            jar = jars.get(key);
+            if (jar == null || !jar.isFile()) {
+                jar = distributions.resolveJar(version, checksum);
+                jars.put(key, jar);
+            }
+            return jar;
+        }
+    }
+
+    /**
+     * Hierarchy indexes shared by the dependency analysis of all projects.
+     */
+    ConcurrentMap<String, HierarchyIndex> getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * How many obfuscations can run at the same time.
+     */
+    int getMaxSlots() {
+        return maxSlots;
+    }
+
+    /**
+     * Blocks until enough slots are free to obfuscate an input jar of the given size.
+     *
+     * @return the number of slots taken, to be passed to {@link #release(int)}
+     */
+    int acquire(long inputBytes) throws InterruptedException {
+        final long bytesPerSlot = Math.max(1, getParameters().getBytesPerObfuscationSlot().get());
+        final int weight = (int) Math.min(maxSlots, Math.max(1, (inputBytes + bytesPerSlot - 1) / bytesPerSlot));
+        slots.acquire(weight);
+        return weight;
+    }
+
+    void release(int weight) {
+        slots.release(weight);
+    }
+
+    /**
+     * Parses a size setting such as {@code 64m}, failing with a message naming the setting when it is not a positive size.
+     */
+    static long parseSize(String setting, String size) {
+        final long bytes;
+        try {
+            bytes = parseSize(size);
+        } catch (NumberFormatException e) {
+            throw new GradleException(setting + " must be a size such as 512k, 64m or 4g, but was '" + size + "'.", e);
+        }
+        if (bytes <= 0) {
+            throw new GradleException(setting + " must be larger than zero, but was '" + size + "'.");
+        }
+        return bytes;
+    }
+
+    /**
+     * Parses a count setting, failing with a message naming the setting when it is not a positive number.
+     */
+    static int parseCount(String setting, String count) {
+        final int value;
+        try {
+            value = Integer.parseInt(count.trim());
+        } catch (NumberFormatException e) {
+            throw new GradleException(setting + " must be a whole number, but was '" + count + "'.", e);
+        }
+        if (value <= 0) {
+            throw new GradleException(setting + " must be larger than zero, but was '" + count + "'.");
+        }
+        return value;
+    }
+
+    static long parseSize(String size) {
+        final String value = size.trim().toLowerCase();
+        long multiplier = 1;
+        String digits = value;
+        if (value.endsWith("k")) {
+            multiplier = 1024;
+        } else if (value.endsWith("m")) {
+            multiplier = 1024 * 1024;
+        } else if (value.endsWith("g")) {
+            multiplier = 1024 * 1024 * 1024;
+        }
+        if (multiplier != 1) {
+            digits = value.substring(0, value.length() - 1);
+        }
+        return Long.parseLong(digits.trim()) * multiplier;
+    }
+}
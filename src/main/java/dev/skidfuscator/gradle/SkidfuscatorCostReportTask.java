@@ -0,0 +1,32 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.tasks.OutputDirectory;
+
+import java.io.File;
+
+/**
+ * Measures what each configured transformer adds to obfuscation time, jar size, methods and
+ * constant pool entries.
+ *
+ * Skidfuscator runs once with the configured transformers and once per enabled transformer with
+ * only that one disabled, see {@link TransformerCostReport}. Runs overlap, so the times are
+ * comparable with each other rather than with a lone run. The report is written to
+ * {@code cost-report.txt} and {@code class-costs.csv}, every run keeps its log in a directory of its own.
+ */
+public abstract class SkidfuscatorCostReportTask extends SkidfuscatorTask {
+
+    public SkidfuscatorCostReportTask() {
+        // Timings are the point of the task, a previous result says nothing about them
+        getOutputs().upToDateWhen(task -> false);
+        getOutputs().cacheIf(task -> false);
+    }
+
+    @OutputDirectory
+    public abstract DirectoryProperty getReportDirectory();
+
+    @Override
+    protected File costReportDirectory() {
+        return getReportDirectory().get().getAsFile();
+    }
+}
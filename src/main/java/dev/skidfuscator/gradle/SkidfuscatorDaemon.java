@@ -0,0 +1,325 @@
+package dev.skidfuscator.gradle;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.Permission;
+import java.security.SecureRandom;
+import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * A long running JVM hosting Skidfuscator, see {@link ExecutionMode#DAEMON}.
+ *
+ * Later runs skip JVM startup and reuse the warmed up JDK. Every request loads Skidfuscator in a
+ * fresh classloader, so static state one run leaves behind cannot leak into the next.
+ * The daemon listens on a loopback port and publishes the port and a random token in
+ * {@code daemon.properties} in its state directory, only clients able to read that file can use it.
+ * Requests are handled one at a time, and a client must send its request within a minute of connecting:
+ * <pre>
+ * request:  token (UTF), argument count (int), arguments (UTF each)
+ * response: frames of a type byte, 1 for a stdout line and 2 for a stderr line (UTF),
+ *           ended by type 0 followed by the exit status (int)
+ * </pre>
+ * The daemon exits after it has been idle for the configured time. Runs with the plugin jar as
+ * its only classpath entry, so it must only use JDK classes.
+ */
+public final class SkidfuscatorDaemon {
+
+    static final String STATE_FILE = "daemon.properties";
+    static final String START_LOCK = "start.lock";
+
+    static final int FRAME_EXIT = 0;
+    static final int FRAME_STDOUT = 1;
+    static final int FRAME_STDERR = 2;
+
+    private static final int REQUEST_TIMEOUT_MILLIS = 60_000;
+
+    private SkidfuscatorDaemon() {
+    }
+
+    /**
+     * Arguments: the Skidfuscator jar, the state directory and the idle timeout in minutes.
+     */
+    public static void main(String[] args) throws Exception {
+        final File skidJar = new File(args[0]);
+        final File stateDir = new File(args[1]);
+        final long idleMillis = Long.parseLong(args[2]) * 60_000L;
+
+        if (!ExitTrap.install()) {
+            System.err.println("This JVM does not allow trapping System.exit, the Skidfuscator daemon cannot run on it.");
+            System.exit(2);
+        }
+
+        final String mainClassName;
+        try (JarFile jar = new JarFile(skidJar)) {
+            Manifest manifest = jar.getManifest();
+            mainClassName = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.MAIN_CLASS);
+        }
+        if (mainClassName == null) {
+            System.err.println("Skidfuscator jar " + skidJar + " declares no Main-Class");
+            System.exit(2);
+        }
+
+        final byte[] tokenBytes = new byte[32];
+        new SecureRandom().nextBytes(tokenBytes);
+        final String token = FileHashes.hex(tokenBytes);
+
+        final File stateFile = new File(stateDir, STATE_FILE);
+        int port = -1;
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout((int) Math.min(Integer.MAX_VALUE, idleMillis));
+            port = server.getLocalPort();
+            publish(stateFile, port, token);
+            System.out.println("Skidfuscator daemon listening on port " + server.getLocalPort());
+
+            while (true) {
+                final Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException e) {
+                    System.out.println("Idle for " + args[2] + " minutes, stopping.");
+                    break;
+                }
+                try {
+                    // A stalled client must not keep the daemon from serving others
+                    socket.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+                    handle(socket, token, skidJar, mainClassName);
+                } catch (IOException e) {
+                    System.out.println("Request failed: " + e);
+                } finally {
+                    socket.close();
+                }
+            }
+        } finally {
+            unpublish(stateFile, port, token);
+        }
+        ExitTrap.allowExit();
+        System.exit(0);
+    }
+
+    private static void publish(File stateFile, int port, String token) throws IOException {
+        final Properties state = new Properties();
+        state.setProperty("port", Integer.toString(port));
+        state.setProperty("token", token);
+        final File tmp = new File(stateFile.getParentFile(), stateFile.getName() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            state.store(out, null);
+        }
+        Files.move(tmp.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Removes the state file, unless a newer daemon has replaced it already. Holds the lock clients
+     * take to start a daemon, so a daemon starting at the same time cannot publish in between.
+     */
+    @SuppressWarnings("try") // The file lock is only held, never used
+    private static void unpublish(File stateFile, int port, String token) throws IOException {
+        try (FileChannel channel = FileChannel.open(new File(stateFile.getParentFile(), START_LOCK).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            final Properties state = new Properties();
+            try (InputStream in = new FileInputStream(stateFile)) {
+                state.load(in);
+            } catch (FileNotFoundException e) {
+                return;
+            }
+            if (Integer.toString(port).equals(state.getProperty("port")) && token.equals(state.getProperty("token"))) {
+                Files.deleteIfExists(stateFile.toPath());
+            }
+        }
+    }
+
+    private static void handle(Socket socket, String token, File skidJar, String mainClassName) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        if (!token.equals(in.readUTF())) {
+            return;
+        }
+        final String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = in.readUTF();
+        }
+
+        final PrintStream previousOut = System.out;
+        final PrintStream previousErr = System.err;
+        final FrameStream stdout = new FrameStream(out, FRAME_STDOUT);
+        final FrameStream stderr = new FrameStream(out, FRAME_STDERR);
+        final PrintStream printOut = new PrintStream(stdout, true, "UTF-8");
+        final PrintStream printErr = new PrintStream(stderr, true, "UTF-8");
+        final Thread thread = Thread.currentThread();
+        final ClassLoader previousLoader = thread.getContextClassLoader();
+
+        // Skidfuscator does not see the daemon's own classes, nor what the previous request left in its statics
+        final URLClassLoader loader = new URLClassLoader(new URL[]{skidJar.toURI().toURL()},
+                ClassLoader.getSystemClassLoader().getParent());
+
+        int status;
+        System.setOut(printOut);
+        System.setErr(printErr);
+        ExitTrap.reset();
+        try {
+            thread.setContextClassLoader(loader);
+            final Method main = loader.loadClass(mainClassName).getMethod("main", String[].class);
+            main.invoke(null, (Object) args);
+            status = ExitTrap.trappedStatus(0);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof ExitTrap.ExitException) {
+                status = ((ExitTrap.ExitException) e.getCause()).status;
+            } else {
+                e.getCause().printStackTrace(printErr);
+                status = 1;
+            }
+        } catch (ReflectiveOperationException e) {
+            e.printStackTrace(printErr);
+            status = 1;
+        } finally {
+            thread.setContextClassLoader(previousLoader);
+            printOut.flush();
+            printErr.flush();
+            stdout.close();
+            stderr.close();
+            System.setOut(previousOut);
+            System.setErr(previousErr);
+            loader.close();
+        }
+
+        synchronized (out) {
+            out.writeByte(FRAME_EXIT);
+            out.writeInt(status);
+            out.flush();
+        }
+    }
+
+    /**
+     * Sends everything written to it as line frames of the given type.
+     */
+    private static final class FrameStream extends OutputStream {
+        private final DataOutputStream out;
+        private final int type;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+
+        private FrameStream(DataOutputStream out, int type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (b == '\n') {
+                sendLine();
+            } else if (line.size() < 16 * 1024) {
+                line.write(b);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (line.size() > 0) {
+                sendLine();
+            }
+        }
+
+        private void sendLine() throws IOException {
+            String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+            line.reset();
+            if (text.endsWith("\r")) {
+                text = text.substring(0, text.length() - 1);
+            }
+            // writeUTF is limited to 64KB of encoded bytes
+            if (text.length() > 16 * 1024) {
+                text = text.substring(0, 16 * 1024);
+            }
+            synchronized (out) {
+                out.writeByte(type);
+                out.writeUTF(text);
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Turns {@code System.exit} into an exception while a request runs, so Skidfuscator's
+     * CLI cannot take the daemon down. Exits from other threads are remembered as the status.
+     */
+    @SuppressWarnings({"removal", "deprecation"})
+    private static final class ExitTrap extends SecurityManager {
+        private static volatile boolean allowExit;
+        private static volatile Integer trapped;
+
+        static boolean install() {
+            try {
+                System.setSecurityManager(new ExitTrap());
+                return true;
+            } catch (SecurityException | UnsupportedOperationException e) {
+                return false;
+            }
+        }
+
+        static void allowExit() {
+            allowExit = true;
+        }
+
+        static void reset() {
+            trapped = null;
+        }
+
+        static int trappedStatus(int fallback) {
+            Integer status = trapped;
+            return status == null ? fallback : status;
+        }
+
+        @Override
+        public void checkExit(int status) {
+            if (!allowExit) {
+                trapped = status;
+                throw new ExitException(status);
+            }
+        }
+
+        @Override
+        public void checkPermission(Permission perm) {
+        }
+
+        @Override
+        public void checkPermission(Permission perm, Object context) {
+        }
+
+        static final class ExitException extends SecurityException {
+            private static final long serialVersionUID = 1L;
+
+            final int status;
+
+            ExitException(int status) {
+                super("System.exit(" + status + ") trapped by the Skidfuscator daemon");
+                this.status = status;
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.logging.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts or reuses a {@link SkidfuscatorDaemon} and sends it obfuscation requests.
+ *
+ * There is one daemon per Skidfuscator jar, Java executable and JVM settings, each with its own
+ * state directory. Starting a daemon is serialized through a file lock, so concurrent builds
+ * share the daemon instead of racing to start their own.
+ */
+final class SkidfuscatorDaemonClient {
+
+    private static final long START_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    private final File stateDir;
+    private final List<String> command;
+    private final Logger logger;
+
+    /**
+     * @param daemonsDir directory holding the state directories of all daemons
+     * @param jvmArgs    heap settings and other arguments for the daemon JVM
+     */
+    SkidfuscatorDaemonClient(File daemonsDir, File skidJar, String javaExecutable, List<String> jvmArgs,
+                             int idleTimeoutMinutes, Logger logger) throws IOException {
+        final File pluginClasspath = pluginClasspath();
+
+        final MessageDigest digest = FileHashes.sha256();
+        for (String part : new String[]{skidJar.getAbsolutePath(), javaExecutable, pluginClasspath.getAbsolutePath(),
+                String.join(" ", jvmArgs)}) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        this.stateDir = new File(daemonsDir, FileHashes.hex(digest.digest()).substring(0, 16));
+        this.logger = logger;
+
+        this.command = new ArrayList<>();
+        command.add(javaExecutable);
+        command.addAll(jvmArgs);
+        // Java 12 to 23 only allow installing the exit trap when asked for up front
+        final int version = JavaInstallation.featureVersion(JavaInstallation.home(javaExecutable));
+        if (version >= 12) {
+            command.add("-Djava.security.manager=allow");
+        }
+        command.add("-cp");
+        command.add(pluginClasspath.getAbsolutePath());
+        command.add(SkidfuscatorDaemon.class.getName());
+        command.add(skidJar.getAbsolutePath());
+        command.add(stateDir.getAbsolutePath());
+        command.add(Integer.toString(idleTimeoutMinutes));
+    }
+
+    /**
+     * Runs Skidfuscator with the given arguments in the daemon, starting the daemon if needed.
+     *
+     * @return the exit status of the run
+     */
+    int run(List<String> args, OutputStream stdout, OutputStream stderr) throws IOException {
+        Socket socket = connect();
+        if (socket == null) {
+            start();
+            socket = connect();
+            if (socket == null) {
+                throw new IOException("Skidfuscator daemon did not accept connections, see " + new File(stateDir, "daemon.log"));
+            }
+        } else {
+            logger.info("Reusing Skidfuscator daemon in " + stateDir);
+        }
+
+        try (Socket connection = socket) {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            out.writeUTF(readState().getProperty("token", ""));
+            out.writeInt(args.size());
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+
+            while (true) {
+                final int type = in.readUnsignedByte();
+                if (type == SkidfuscatorDaemon.FRAME_EXIT) {
+                    return in.readInt();
+                }
+                final OutputStream target = type == SkidfuscatorDaemon.FRAME_STDERR ? stderr : stdout;
+                target.write(in.readUTF().getBytes(Charset.defaultCharset()));
+                target.write('\n');
+            }
+        }
+    }
+
+    private Socket connect() {
+        final Properties state = readState();
+        if (state == null) {
+            return null;
+        }
+        try {
+            final Socket socket = new Socket();
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                    Integer.parseInt(state.getProperty("port", "0"))), 2000);
+            return socket;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.debug("Skidfuscator daemon in " + stateDir + " is not reachable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Properties readState() {
+        final File stateFile = new File(stateDir, SkidfuscatorDaemon.STATE_FILE);
+        if (!stateFile.isFile()) {
+            return null;
+        }
+        final Properties state = new Properties();
+        try (InputStream in = new FileInputStream(stateFile)) {
+            state.load(in);
+            return state;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("try") // The file lock is only held, never used
+    private void start() throws IOException {
+        if (!stateDir.exists() && !stateDir.mkdirs()) {
+            throw new IOException("Failed to create directory: " + stateDir.getAbsolutePath());
+        }
+
+        try (FileChannel channel = FileChannel.open(new File(stateDir, SkidfuscatorDaemon.START_LOCK).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            // Another build may have started it while this one waited for the lock
+            final Socket existing = connect();
+            if (existing != null) {
+                existing.close();
+                return;
+            }
+
+            final File stateFile = new File(stateDir, SkidfuscatorDaemon.STATE_FILE);
+            Files.deleteIfExists(stateFile.toPath());
+            final File log = new File(stateDir, "daemon.log");
+            logger.lifecycle("Starting Skidfuscator daemon...");
+            final Process process = new ProcessBuilder(command)
+                    .directory(stateDir)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.to(log))
+                    .start();
+            process.getOutputStream().close();
+
+            final long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+            while (!stateFile.isFile()) {
+                if (!process.isAlive()) {
+                    throw new IOException("Skidfuscator daemon exited with status " + process.exitValue() + ": "
+                            + new String(Files.readAllBytes(log.toPath()), Charset.defaultCharset()).trim());
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    process.destroy();
+                    throw new IOException("Skidfuscator daemon did not start within " + START_TIMEOUT_MILLIS / 1000 + " seconds");
+                }
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while starting the Skidfuscator daemon", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * The jar or directory this plugin is loaded from, which is the daemon's classpath.
+     */
+    private static File pluginClasspath() throws IOException {
+        try {
+            return new File(SkidfuscatorDaemon.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException | NullPointerException e) {
+            throw new IOException("Cannot locate the Skidfuscator plugin classes", e);
+        }
+    }
+}
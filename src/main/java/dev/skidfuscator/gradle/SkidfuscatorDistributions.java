@@ -0,0 +1,331 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.logging.Logger;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves and downloads Skidfuscator releases into a cache shared by every project.
+ *
+ * Layout of the cache directory:
+ * <pre>
+ * latest.properties             last resolved "latest" version and when it was resolved
+ * &lt;version&gt;/skidfuscator.jar
+ * &lt;version&gt;/skidfuscator.jar.sha256     checksum of the jar, followed by the size and modification time it was taken at
+ * &lt;version&gt;/skidfuscator.jar.unverified  present while no expected checksum confirmed the jar
+ * </pre>
+ * Downloads go to a {@code .part} file that is resumed when interrupted, verified against
+ * the expected SHA-256 and then atomically moved into place. A jar without any expected
+ * checksum is still used, but with a warning on every use until one is configured. A cached jar is
+ * only hashed again when its size or modification time no longer match the recorded checksum.
+ */
+final class SkidfuscatorDistributions {
+
+    static final String DEFAULT_RELEASES_API_URL = "https://api.github.com/repos/skidfuscatordev/skidfuscator-java-obfuscator/releases";
+    static final String DEFAULT_DOWNLOAD_BASE_URL = "https://github.com/skidfuscatordev/skidfuscator-java-obfuscator/releases/download";
+
+    private static final String JAR_NAME = "skidfuscator.jar";
+    private static final int CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(30);
+    private static final int READ_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(60);
+    private static final ConcurrentMap<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private final File cacheDir;
+    private final String releasesApiUrl;
+    private final String downloadBaseUrl;
+    private final long latestTtlMillis;
+    private final boolean offline;
+    private final Logger logger;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    SkidfuscatorDistributions(File cacheDir, String releasesApiUrl, String downloadBaseUrl,
+                              long latestTtlMinutes, boolean offline, Logger logger) {
+        this(cacheDir, releasesApiUrl, downloadBaseUrl, TimeUnit.MINUTES.toMillis(latestTtlMinutes), offline, logger,
+                CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS);
+    }
+
+    SkidfuscatorDistributions(File cacheDir, String releasesApiUrl, String downloadBaseUrl, long latestTtlMillis,
+                              boolean offline, Logger logger, int connectTimeoutMillis, int readTimeoutMillis) {
+        this.cacheDir = cacheDir;
+        this.releasesApiUrl = trimSlash(releasesApiUrl);
+        this.downloadBaseUrl = trimSlash(downloadBaseUrl);
+        this.latestTtlMillis = latestTtlMillis;
+        this.offline = offline;
+        this.logger = logger;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Resolves {@code latest} to the tag of the most recent release, any other version is returned as is.
+     *
+     * The latest version is remembered for the configured time to live. When offline, or when
+     * the release API cannot be reached, the remembered version is used regardless of its age.
+     */
+    String resolveVersion(String requestedVersion) throws IOException {
+        if (!"latest".equalsIgnoreCase(requestedVersion)) {
+            return requestedVersion;
+        }
+
+        final File latestFile = new File(cacheDir, "latest.properties");
+        final Properties latest = new Properties();
+        if (latestFile.exists()) {
+            try (InputStream in = new FileInputStream(latestFile)) {
+                latest.load(in);
+            } catch (IOException e) {
+                logger.debug("Ignoring unreadable " + latestFile + ": " + e.getMessage());
+            }
+        }
+
+        final String cachedVersion = latest.getProperty("version");
+        final long resolvedAt = parseLong(latest.getProperty("resolvedAt"));
+        if (cachedVersion != null && (offline || System.currentTimeMillis() - resolvedAt < latestTtlMillis)) {
+            return cachedVersion;
+        }
+        if (offline) {
+            throw new IOException("Cannot resolve the latest Skidfuscator version in offline mode, no version has been cached yet. "
+                    + "Run once online or set skidfuscator.skidfuscatorVersion explicitly.");
+        }
+
+        final String version;
+        try {
+            version = fetchLatestVersion();
+        } catch (IOException e) {
+            if (cachedVersion == null) {
+                throw e;
+            }
+            logger.warn("Failed to fetch latest Skidfuscator version, using cached " + cachedVersion + ": " + e.getMessage());
+            return cachedVersion;
+        }
+
+        latest.setProperty("version", version);
+        latest.setProperty("resolvedAt", Long.toString(System.currentTimeMillis()));
+        mkdirs(cacheDir);
+        File tmp = new File(cacheDir, "latest.properties." + Thread.currentThread().getId() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            latest.store(out, null);
+        }
+        move(tmp, latestFile);
+        return version;
+    }
+
+    /**
+     * Returns the cached jar of the given version, downloading it first if needed.
+     *
+     * @param expectedSha256 checksum the jar must have, or {@code null} to use the checksum
+     *                       published with the release, when there is one
+     */
+    @SuppressWarnings("try") // The file lock is only held, never used
+    File resolveJar(String version, String expectedSha256) throws IOException {
+        final File versionDir = new File(cacheDir, version);
+        final File jar = new File(versionDir, JAR_NAME);
+        final File checksumFile = new File(versionDir, JAR_NAME + ".sha256");
+        final File unverifiedFile = new File(versionDir, JAR_NAME + ".unverified");
+
+        synchronized (LOCKS.computeIfAbsent(versionDir.getAbsolutePath(), k -> new Object())) {
+            mkdirs(versionDir);
+            // Serializes downloads between Gradle daemons sharing the same user home
+            try (FileChannel channel = FileChannel.open(new File(versionDir, ".lock").toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+
+                if (jar.exists() && checksumFile.exists()) {
+                    final String[] recorded = new String(Files.readAllBytes(checksumFile.toPath()), "UTF-8").trim().split("\\s+");
+                    final boolean unchanged = recorded.length == 3 && recorded[1].equals(Long.toString(jar.length()))
+                            && recorded[2].equals(Long.toString(jar.lastModified()));
+                    final String actual = unchanged ? recorded[0] : FileHashes.sha256(jar);
+                    if (!unchanged && recorded[0].equalsIgnoreCase(actual)) {
+                        writeChecksum(checksumFile, jar, actual);
+                    }
+                    if (recorded[0].equalsIgnoreCase(actual) && (expectedSha256 == null || expectedSha256.equalsIgnoreCase(actual))) {
+                        if (expectedSha256 != null) {
+                            Files.deleteIfExists(unverifiedFile.toPath());
+                        } else if (unverifiedFile.exists()) {
+                            warnUnverified(version, actual);
+                        }
+                        return jar;
+                    }
+                    logger.warn("Cached Skidfuscator " + version + " does not match its checksum, downloading again.");
+                    Files.delete(jar.toPath());
+                }
+
+                if (offline) {
+                    throw new IOException("Skidfuscator " + version + " is not cached and Gradle runs in offline mode.");
+                }
+
+                String expected = expectedSha256 != null ? expectedSha256 : fetchPublishedSha256(version);
+                logger.lifecycle("Downloading Skidfuscator " + version + "...");
+                File part = new File(versionDir, JAR_NAME + ".part");
+                String actual = download(downloadBaseUrl + "/" + version + "/" + JAR_NAME, part);
+                if (expected != null && !expected.equalsIgnoreCase(actual)) {
+                    Files.delete(part.toPath());
+                    throw new IOException("Checksum mismatch for Skidfuscator " + version + ": expected " + expected + " but was " + actual);
+                }
+
+                move(part, jar);
+                writeChecksum(checksumFile, jar, actual);
+                if (expected == null) {
+                    Files.write(unverifiedFile.toPath(), new byte[0]);
+                    warnUnverified(version, actual);
+                } else {
+                    Files.deleteIfExists(unverifiedFile.toPath());
+                }
+                return jar;
+            }
+        }
+    }
+
+    private static void writeChecksum(File checksumFile, File jar, String sha256) throws IOException {
+        final File tmp = new File(checksumFile.getParentFile(), checksumFile.getName() + ".tmp");
+        Files.write(tmp.toPath(), (sha256 + " " + jar.length() + " " + jar.lastModified()).getBytes("UTF-8"));
+        move(tmp, checksumFile);
+    }
+
+    private void warnUnverified(String version, String actual) {
+        logger.warn("Skidfuscator " + version + " has no published checksum and was not verified. "
+                + "Set skidfuscator.skidfuscatorChecksum = \"" + actual + "\" once you have checked this jar.");
+    }
+
+    private String fetchLatestVersion() throws IOException {
+        String json = get(releasesApiUrl + "/latest");
+        int tagIndex = json.indexOf("\"tag_name\"");
+        if (tagIndex == -1) {
+            throw new IOException("Could not find tag_name in release JSON");
+        }
+        int start = json.indexOf(":", tagIndex) + 1;
+        int end = json.indexOf(",", start);
+        if (end == -1) end = json.indexOf("}", start);
+        String tag = json.substring(start, end).replaceAll("\"", "").trim();
+        return tag.startsWith("v") ? tag.substring(1) : tag;
+    }
+
+    /**
+     * Looks up the digest GitHub publishes for the release asset, if any.
+     */
+    private String fetchPublishedSha256(String version) {
+        final String json;
+        try {
+            json = get(releasesApiUrl + "/tags/" + version);
+        } catch (IOException e) {
+            logger.warn("Could not fetch the published checksum for Skidfuscator " + version + ": " + e.getMessage());
+            return null;
+        }
+
+        // The digest is a field of the asset object, which ends with its browser_download_url
+        String compact = json.replace(" ", "");
+        int assetIndex = compact.indexOf("\"name\":\"" + JAR_NAME + "\"");
+        int digestIndex = assetIndex == -1 ? -1 : compact.indexOf("\"digest\":\"sha256:", assetIndex);
+        int assetEnd = assetIndex == -1 ? -1 : compact.indexOf("\"browser_download_url\"", assetIndex);
+        if (digestIndex == -1 || (assetEnd != -1 && digestIndex > assetEnd)) {
+            return null;
+        }
+        int start = digestIndex + "\"digest\":\"sha256:".length();
+        int end = compact.indexOf("\"", start);
+        return end == -1 ? null : compact.substring(start, end);
+    }
+
+    private String get(String urlStr) throws IOException {
+        HttpURLConnection conn = open(urlStr);
+        conn.setRequestProperty("Accept", "application/vnd.github.v3+json");
+        conn.connect();
+        if (conn.getResponseCode() != 200) {
+            throw new IOException("Failed to fetch " + urlStr + ". HTTP " + conn.getResponseCode());
+        }
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream(), "UTF-8"))) {
+            return br.lines().collect(Collectors.joining());
+        }
+    }
+
+    /**
+     * Downloads into the target file, resuming a previous partial download when the server supports ranges.
+     *
+     * @return the SHA-256 of the complete file
+     */
+    private String download(String urlStr, File target) throws IOException {
+        long existing = target.exists() ? target.length() : 0;
+        HttpURLConnection conn = open(urlStr);
+        if (existing > 0) {
+            conn.setRequestProperty("Range", "bytes=" + existing + "-");
+        }
+        conn.connect();
+
+        int code = conn.getResponseCode();
+        boolean resume = existing > 0 && code == HttpURLConnection.HTTP_PARTIAL;
+        if (code != HttpURLConnection.HTTP_OK && !resume) {
+            throw new IOException("Failed to download " + urlStr + ". HTTP " + code);
+        }
+
+        MessageDigest digest = FileHashes.sha256();
+        if (resume) {
+            try (InputStream in = new FileInputStream(target)) {
+                update(digest, in, null);
+            }
+        }
+        try (InputStream in = conn.getInputStream();
+             OutputStream out = new FileOutputStream(target, resume)) {
+            update(digest, in, out);
+        }
+        return FileHashes.hex(digest.digest());
+    }
+
+    /**
+     * Opens a connection that gives up on a stalled server instead of hanging the build.
+     */
+    private HttpURLConnection open(String urlStr) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(urlStr).openConnection();
+        conn.setConnectTimeout(connectTimeoutMillis);
+        conn.setReadTimeout(readTimeoutMillis);
+        return conn;
+    }
+
+    private static void update(MessageDigest digest, InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+            if (out != null) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void mkdirs(File dir) throws IOException {
+        if (!dir.exists() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Failed to create directory: " + dir.getAbsolutePath());
+        }
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return value == null ? 0 : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String trimSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
@@ -19,6 +19,12 @@ public class SkidfuscatorExtension {
 
     private final TransformersExtension transformersExtension;
 
+    /**
+     * Jars obfuscated together by the {@code skidfuscatorBatch} task, see {@link BatchJarSpec}.
+     */
+    @Getter
+    private final NamedDomainObjectContainer<BatchJarSpec> batch;
+
     @Getter
     private final Property<Boolean> phantom;
     @Getter
@@ -42,9 +48,68 @@ public class SkidfuscatorExtension {
     private final Property<String> configFileName;
     @Getter
     private final Property<String> skidfuscatorVersion;
+    @Getter
+    private final Property<String> skidfuscatorChecksum;
+    @Getter
+    private final Property<String> releasesApiUrl;
+    @Getter
+    private final Property<String> downloadBaseUrl;
+    @Getter
+    private final Property<Integer> latestVersionCacheMinutes;
+    @Getter
+    private final Property<Integer> analysisParallelism;
+    @Getter
+    private final Property<ExecutionMode> executionMode;
+    @Getter
+    private final ListProperty<String> jvmArgs;
+    @Getter
+    private final Property<Integer> daemonIdleTimeoutMinutes;
+    @Getter
+    private final Property<String> minHeapSize;
+    @Getter
+    private final Property<String> maxHeapSize;
+    @Getter
+    private final Property<Boolean> classDataSharing;
+    @Getter
+    private final Property<Boolean> adaptiveHeap;
+    @Getter
+    private final Property<String> maxHeapCeiling;
+    @Getter
+    private final Property<Integer> reportHistorySize;
+    @Getter
+    private final Property<SkidfuscatorLogLevel> logLevel;
+    @Getter
+    private final Property<Boolean> slimLibraries;
+    @Getter
+    private final Property<Boolean> splitExcludedClasses;
+    @Getter
+    private final Property<Integer> shards;
+    @Getter
+    private final Property<Boolean> repackageOutput;
+    @Getter
+    private final Property<Integer> outputCompressionLevel;
+    @Getter
+    private final Property<String> hotMethodProfile;
+    @Getter
+    private final ListProperty<String> hotMethodTransformers;
+    @Getter
+    private final Property<Integer> hotMethodTop;
+    @Getter
+    private final Property<Integer> hotMethodMinPercent;
+    @Getter
+    private final Property<String> benchmarkSourceSet;
+    @Getter
+    private final Property<String> benchmarkIncludes;
+    @Getter
+    private final ListProperty<String> benchmarkJmhArgs;
+    @Getter
+    private final Property<Integer> benchmarkMaxRegressionPercent;
+    @Getter
+    private final Property<Integer> benchmarkMaxAllocationIncreasePercent;
 
     @Inject
-    public SkidfuscatorExtension(ObjectFactory objects, NamedDomainObjectContainer<TransformerSpec> transformersContainer) {
+    public SkidfuscatorExtension(ObjectFactory objects, NamedDomainObjectContainer<TransformerSpec> transformersContainer,
+                                 NamedDomainObjectContainer<BatchJarSpec> batchContainer) {
         this.exempt = objects.listProperty(String.class);
         this.exclude = objects.listProperty(String.class);
         this.libs = objects.listProperty(String.class);
@@ -60,6 +125,35 @@ public class SkidfuscatorExtension {
         this.output = objects.property(String.class);
         this.configFileName = objects.property(String.class);
         this.skidfuscatorVersion = objects.property(String.class);
+        this.skidfuscatorChecksum = objects.property(String.class);
+        this.releasesApiUrl = objects.property(String.class);
+        this.downloadBaseUrl = objects.property(String.class);
+        this.latestVersionCacheMinutes = objects.property(Integer.class);
+        this.analysisParallelism = objects.property(Integer.class);
+        this.executionMode = objects.property(ExecutionMode.class);
+        this.jvmArgs = objects.listProperty(String.class);
+        this.daemonIdleTimeoutMinutes = objects.property(Integer.class);
+        this.minHeapSize = objects.property(String.class);
+        this.maxHeapSize = objects.property(String.class);
+        this.classDataSharing = objects.property(Boolean.class);
+        this.adaptiveHeap = objects.property(Boolean.class);
+        this.maxHeapCeiling = objects.property(String.class);
+        this.reportHistorySize = objects.property(Integer.class);
+        this.logLevel = objects.property(SkidfuscatorLogLevel.class);
+        this.slimLibraries = objects.property(Boolean.class);
+        this.splitExcludedClasses = objects.property(Boolean.class);
+        this.shards = objects.property(Integer.class);
+        this.repackageOutput = objects.property(Boolean.class);
+        this.outputCompressionLevel = objects.property(Integer.class);
+        this.hotMethodProfile = objects.property(String.class);
+        this.hotMethodTransformers = objects.listProperty(String.class);
+        this.hotMethodTop = objects.property(Integer.class);
+        this.hotMethodMinPercent = objects.property(Integer.class);
+        this.benchmarkSourceSet = objects.property(String.class);
+        this.benchmarkIncludes = objects.property(String.class);
+        this.benchmarkJmhArgs = objects.listProperty(String.class);
+        this.benchmarkMaxRegressionPercent = objects.property(Integer.class);
+        this.benchmarkMaxAllocationIncreasePercent = objects.property(Integer.class);
 
         this.phantom.convention(false);
         this.fuckit.convention(false);
@@ -68,8 +162,29 @@ public class SkidfuscatorExtension {
         this.javaExecutable.convention("java");
         this.configFileName.convention("skidfuscator.conf");
         this.skidfuscatorVersion.convention("latest");
+        this.releasesApiUrl.convention(SkidfuscatorDistributions.DEFAULT_RELEASES_API_URL);
+        this.downloadBaseUrl.convention(SkidfuscatorDistributions.DEFAULT_DOWNLOAD_BASE_URL);
+        this.latestVersionCacheMinutes.convention(60);
+        this.analysisParallelism.convention(Runtime.getRuntime().availableProcessors());
+        this.executionMode.convention(ExecutionMode.FORK);
+        this.classDataSharing.convention(false);
+        this.adaptiveHeap.convention(false);
+        this.maxHeapCeiling.convention("4g");
+        this.daemonIdleTimeoutMinutes.convention(180);
+        this.reportHistorySize.convention(100);
+        this.logLevel.convention(SkidfuscatorLogLevel.SUMMARY);
+        this.slimLibraries.convention(false);
+        this.splitExcludedClasses.convention(false);
+        this.shards.convention(1);
+        this.repackageOutput.convention(false);
+        this.outputCompressionLevel.convention(6);
+        this.hotMethodTop.convention(20);
+        this.benchmarkSourceSet.convention("jmh");
+        this.benchmarkIncludes.convention("");
+        this.benchmarkMaxRegressionPercent.convention(10);
 
         this.transformersExtension = new TransformersExtension(transformersContainer);
+        this.batch = batchContainer;
     }
 
     public TransformersExtension getTransformers() { return transformersExtension; }
@@ -77,4 +192,8 @@ public class SkidfuscatorExtension {
     public void transformers(org.gradle.api.Action<? super NamedDomainObjectContainer<TransformerSpec>> action) {
         this.transformersExtension.transformers(action);
     }
+
+    public void batch(org.gradle.api.Action<? super NamedDomainObjectContainer<BatchJarSpec>> action) {
+        action.execute(batch);
+    }
 }
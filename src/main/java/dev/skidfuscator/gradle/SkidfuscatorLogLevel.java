@@ -0,0 +1,25 @@
+package dev.skidfuscator.gradle;
+
+/**
+ * How much of the dependency analysis and Skidfuscator output is shown on the console.
+ *
+ * Independently of the level, the complete output is written to {@code build/skidfuscator/skidfuscator.log}.
+ */
+public enum SkidfuscatorLogLevel {
+    /**
+     * Only errors.
+     */
+    QUIET,
+    /**
+     * Errors, warnings and a throttled stream of progress lines, everything else at info level.
+     */
+    SUMMARY,
+    /**
+     * Every line, including each library and class kept by the dependency analysis.
+     */
+    VERBOSE,
+    /**
+     * Every line, with Skidfuscator itself running with {@code --debug}.
+     */
+    DEBUG
+}
@@ -0,0 +1,294 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.logging.Logger;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Routes the plugin's detail output and the Skidfuscator process output to a log file and the console.
+ *
+ * Every line goes to the buffered log file. Only what the configured {@link SkidfuscatorLogLevel}
+ * asks for reaches the console, so that large projects do not flood the build output. The process
+ * output is consumed line by line as it arrives, only the current line is ever held in memory.
+ * Processes running side by side each get an output of their own from {@link #forRun(String, File)}.
+ */
+final class SkidfuscatorOutput implements Closeable {
+
+    private static final Pattern ERROR = Pattern.compile("(?i)\\b(error|severe|fatal)\\b|exception\\b|^\\s*Caused by:");
+    private static final Pattern WARNING = Pattern.compile("(?i)\\bwarn(ing)?\\b");
+    private static final Pattern STACK_FRAME = Pattern.compile("^\\s+(at |\\.\\.\\. \\d+ more)");
+    private static final Pattern PROGRESS = Pattern.compile(
+            "(?i)^\\W*(loading|loaded|importing|imported|resolving|resolved|analy[sz]ing|transforming|running|"
+                    + "exporting|exported|writing|wrote|dumping|finished|completed|done)\\b|\\d+(\\.\\d+)?\\s*%");
+
+    private static final int MAX_CONSOLE_ERROR_LINES = 100;
+    private static final int MAX_CONSOLE_WARNING_LINES = 100;
+    private static final int MAX_LINE_LENGTH = 16 * 1024;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final File logFile;
+    private final Writer writer;
+    private final Logger logger;
+    private final SkidfuscatorLogLevel level;
+    private final SkidfuscatorOutput parent;
+    private final String prefix;
+    private final List<LineStream> streams = new ArrayList<>(2);
+
+    private int lines;
+    private int errors;
+    private int warnings;
+    private int consoleErrorLines;
+    private int consoleWarningLines;
+    private boolean outOfMemoryError;
+    private boolean inStackTrace;
+    private long lastProgressNanos;
+    private String pendingProgress;
+
+    SkidfuscatorOutput(File logFile, Logger logger, SkidfuscatorLogLevel level) throws IOException {
+        this(logFile, logger, level, null, "");
+    }
+
+    private SkidfuscatorOutput(File logFile, Logger logger, SkidfuscatorLogLevel level, SkidfuscatorOutput parent,
+                               String prefix) throws IOException {
+        this.logFile = logFile;
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(logFile), StandardCharsets.UTF_8), 64 * 1024);
+        this.logger = logger;
+        this.level = level;
+        this.parent = parent;
+        this.prefix = prefix;
+    }
+
+    /**
+     * An output for one of several processes running at the same time, with its own log file and
+     * stack trace state. Its console lines start with the name, its errors and warnings are added
+     * to this output when it is closed.
+     */
+    SkidfuscatorOutput forRun(String name, File logFile) throws IOException {
+        return new SkidfuscatorOutput(logFile, logger, level, this, "[" + name + "] ");
+    }
+
+    /**
+     * Logs detail of the plugin itself, shown on the console only at {@link SkidfuscatorLogLevel#VERBOSE} and above.
+     */
+    synchronized void detail(String line) {
+        write(line);
+        if (isVerbose()) {
+            logger.lifecycle(line);
+        } else {
+            logger.info(line);
+        }
+    }
+
+    /**
+     * A stream for the standard output of the Skidfuscator process.
+     */
+    OutputStream stdout() {
+        return stream(false);
+    }
+
+    /**
+     * A stream for the error output of the Skidfuscator process.
+     */
+    OutputStream stderr() {
+        return stream(true);
+    }
+
+    private synchronized OutputStream stream(boolean stderr) {
+        LineStream stream = new LineStream(stderr);
+        streams.add(stream);
+        return stream;
+    }
+
+    boolean isVerbose() {
+        return level == SkidfuscatorLogLevel.VERBOSE || level == SkidfuscatorLogLevel.DEBUG;
+    }
+
+    synchronized int getErrors() {
+        return errors;
+    }
+
+    synchronized int getWarnings() {
+        return warnings;
+    }
+
+    synchronized boolean sawOutOfMemoryError() {
+        return outOfMemoryError;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        // A last line without a line break is still in its stream
+        for (LineStream stream : streams) {
+            stream.close();
+        }
+        if (pendingProgress != null && level == SkidfuscatorLogLevel.SUMMARY) {
+            logger.lifecycle(pendingProgress);
+            pendingProgress = null;
+        }
+        writer.close();
+        if (parent != null) {
+            parent.add(errors, warnings);
+        }
+        if (lines > 0 && !isVerbose()) {
+            String summary = prefix + "Skidfuscator printed " + lines + " lines (" + errors + " errors, " + warnings
+                    + " warnings), full output in " + logFile.getAbsolutePath();
+            if (level == SkidfuscatorLogLevel.QUIET) {
+                logger.info(summary);
+            } else {
+                logger.lifecycle(summary);
+            }
+        }
+    }
+
+    private synchronized void add(int errors, int warnings) {
+        this.errors += errors;
+        this.warnings += warnings;
+    }
+
+    private synchronized void processLine(String line, boolean stderr) {
+        lines++;
+        write(line);
+        if (line.contains("java.lang.OutOfMemoryError")) {
+            outOfMemoryError = true;
+        }
+
+        // Lines are matched as printed, the prefix is only for the console
+        final String shown = prefix + line;
+        if (isVerbose()) {
+            if (stderr) {
+                logger.error(shown);
+            } else {
+                logger.lifecycle(shown);
+            }
+            return;
+        }
+
+        // Stack frames belong to the error above them
+        if (inStackTrace && STACK_FRAME.matcher(line).find()) {
+            errorLine(shown);
+            return;
+        }
+        inStackTrace = false;
+
+        if (ERROR.matcher(line).find()) {
+            errors++;
+            inStackTrace = true;
+            errorLine(shown);
+        } else if (WARNING.matcher(line).find()) {
+            warnings++;
+            if (level == SkidfuscatorLogLevel.SUMMARY) {
+                warningLine(shown);
+            } else {
+                logger.info(shown);
+            }
+        } else if (level == SkidfuscatorLogLevel.SUMMARY && PROGRESS.matcher(line).find()) {
+            progress(prefix + line.trim());
+        } else {
+            logger.info(shown);
+        }
+    }
+
+    private void errorLine(String line) {
+        if (consoleErrorLines < MAX_CONSOLE_ERROR_LINES) {
+            logger.error(line);
+        } else if (consoleErrorLines == MAX_CONSOLE_ERROR_LINES) {
+            logger.error(prefix + "... more errors in " + logFile.getAbsolutePath());
+        } else {
+            logger.info(line);
+        }
+        consoleErrorLines++;
+    }
+
+    private void warningLine(String line) {
+        if (consoleWarningLines < MAX_CONSOLE_WARNING_LINES) {
+            logger.warn(line);
+        } else if (consoleWarningLines == MAX_CONSOLE_WARNING_LINES) {
+            logger.warn(prefix + "... more warnings in " + logFile.getAbsolutePath());
+        } else {
+            logger.info(line);
+        }
+        consoleWarningLines++;
+    }
+
+    /**
+     * Shows at most one progress line per interval, the latest one wins.
+     */
+    private void progress(String line) {
+        long now = System.nanoTime();
+        if (lastProgressNanos == 0 || now - lastProgressNanos >= PROGRESS_INTERVAL_NANOS) {
+            logger.lifecycle(line);
+            lastProgressNanos = now;
+            pendingProgress = null;
+        } else {
+            logger.info(line);
+            pendingProgress = line;
+        }
+    }
+
+    private void write(String line) {
+        try {
+            writer.write(line);
+            writer.write('\n');
+        } catch (IOException e) {
+            logger.debug("Failed to write to " + logFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Splits the bytes written by the process into lines, decoded with the platform charset.
+     */
+    private final class LineStream extends OutputStream {
+        private final boolean stderr;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+
+        private LineStream(boolean stderr) {
+            this.stderr = stderr;
+        }
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                flushLine();
+            } else if (buffer.size() < MAX_LINE_LENGTH) {
+                buffer.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                write(bytes[i]);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (buffer.size() > 0) {
+                flushLine();
+            }
+        }
+
+        private void flushLine() {
+            String line = new String(buffer.toByteArray(), Charset.defaultCharset());
+            buffer.reset();
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            processLine(line, stderr);
+        }
+    }
+}
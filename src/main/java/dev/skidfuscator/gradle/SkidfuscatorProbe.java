@@ -0,0 +1,163 @@
+package dev.skidfuscator.gradle;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Java agent attached to the forked Skidfuscator JVM to measure its resource usage.
+ *
+ * When the JVM shuts down, the peak resident set size, peak heap usage, largest heap left after a
+ * garbage collection and time spent in garbage collection are written as properties to the file
+ * passed as the agent argument. The heap left after collections is the live set, which unlike the
+ * peak does not grow with the heap the JVM is given.
+ * This class is copied on its own into a small agent jar, so it must only use JDK classes
+ * and must not declare nested classes or lambdas.
+ */
+public final class SkidfuscatorProbe implements Runnable, NotificationListener {
+
+    private static final String CLASS_FILE = SkidfuscatorProbe.class.getName().replace('.', '/') + ".class";
+
+    private final File target;
+
+    private long peakLiveHeap;
+
+    private SkidfuscatorProbe(File target) {
+        this.target = target;
+    }
+
+    public static void premain(String args) {
+        if (args != null && !args.isEmpty()) {
+            final SkidfuscatorProbe probe = new SkidfuscatorProbe(new File(args));
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (collector instanceof NotificationEmitter) {
+                    ((NotificationEmitter) collector).addNotificationListener(probe, null, null);
+                }
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(probe, "skidfuscator-probe"));
+        }
+    }
+
+    /**
+     * Called after every garbage collection, samples what the collectors left on the heap.
+     */
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        sampleLiveHeap();
+    }
+
+    private synchronized long sampleLiveHeap() {
+        long live = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            final MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if (usage != null) {
+                live += usage.getUsed();
+            }
+        }
+        peakLiveHeap = Math.max(peakLiveHeap, live);
+        return peakLiveHeap;
+    }
+
+    @Override
+    public void run() {
+        final Properties properties = new Properties();
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+        properties.setProperty("peakHeapBytes", Long.toString(peakHeap));
+        properties.setProperty("maxHeapBytes", Long.toString(Runtime.getRuntime().maxMemory()));
+        final long liveHeap = sampleLiveHeap();
+        if (liveHeap > 0) {
+            properties.setProperty("liveHeapBytes", Long.toString(liveHeap));
+        }
+
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcMillis += Math.max(0, collector.getCollectionTime());
+        }
+        properties.setProperty("gcMillis", Long.toString(gcMillis));
+        properties.setProperty("uptimeMillis", Long.toString(ManagementFactory.getRuntimeMXBean().getUptime()));
+
+        // Only Linux exposes the high water mark of the resident set
+        final long peakRss = readStatusKb("VmHWM");
+        if (peakRss >= 0) {
+            properties.setProperty("peakRssBytes", Long.toString(peakRss * 1024));
+        }
+
+        try (OutputStream out = new FileOutputStream(target)) {
+            properties.store(out, null);
+        } catch (IOException ignored) {
+            // Measuring must never fail the obfuscation
+        }
+    }
+
+    private static long readStatusKb(String field) {
+        final File status = new File("/proc/self/status");
+        if (!status.isFile()) {
+            return -1;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(status), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(field + ":")) {
+                    String value = line.substring(field.length() + 1).trim();
+                    int space = value.indexOf(' ');
+                    return Long.parseLong(space == -1 ? value : value.substring(0, space));
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+            // Fall through, the value is simply not reported
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the agent jar holding this class to the given file.
+     */
+    static void writeAgentJar(File jar) throws IOException {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Premain-Class", SkidfuscatorProbe.class.getName());
+
+        final File tmp = new File(jar.getParentFile(), jar.getName() + ".tmp");
+        try (InputStream in = SkidfuscatorProbe.class.getClassLoader().getResourceAsStream(CLASS_FILE);
+             JarOutputStream out = new JarOutputStream(new FileOutputStream(tmp), manifest)) {
+            if (in == null) {
+                throw new IOException("Cannot find " + CLASS_FILE + " on the plugin classpath");
+            }
+            out.putNextEntry(new JarEntry(CLASS_FILE));
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            out.closeEntry();
+        }
+        Files.move(tmp.toPath(), jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,1436 @@
+package dev.skidfuscator.gradle;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigRenderOptions;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.jvm.toolchain.JavaLanguageVersion;
+import org.gradle.jvm.toolchain.JavaLauncher;
+import org.gradle.jvm.toolchain.JavaToolchainService;
+import org.gradle.process.ExecOperations;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+
+/**
+ * Obfuscates a single jar with Skidfuscator.
+ *
+ * Every setting which can change the obfuscated jar is declared as a task input,
+ * so Gradle can skip the task when nothing changed and reuse results from the
+ * local or remote build cache.
+ */
+@CacheableTask
+public abstract class SkidfuscatorTask extends DefaultTask {
+
+    /**
+     * Status a HotSpot JVM exits with under {@code -XX:+ExitOnOutOfMemoryError}.
+     */
+    private static final int OUT_OF_MEMORY_EXIT_STATUS = 3;
+
+    // Dependencies, download, fingerprint and split run at the same time, analysis follows dependencies and fingerprint
+    private static final int PREPARATION_PARALLELISM = 4;
+
+    @Inject
+    protected abstract ExecOperations getExecOperations();
+
+    @Inject
+    protected abstract JavaToolchainService getJavaToolchainService();
+
+    @Inject
+    protected abstract WorkerExecutor getWorkerExecutor();
+
+    @Optional
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getInputJar();
+
+    /**
+     * The compile classpath of the project, staged as libraries for Skidfuscator.
+     */
+    @Classpath
+    public abstract ConfigurableFileCollection getClasspath();
+
+    @Input
+    public abstract ListProperty<String> getExempt();
+
+    @Input
+    public abstract ListProperty<String> getExclude();
+
+    /**
+     * Extra libraries, fingerprinted by content so a changed library reruns the task.
+     */
+    @Classpath
+    public abstract ConfigurableFileCollection getLibs();
+
+    /**
+     * Transformer name to transformer properties, as configured through {@link TransformerSpec}.
+     */
+    @Input
+    public abstract MapProperty<String, Object> getTransformers();
+
+    @Input
+    public abstract Property<Boolean> getPhantom();
+
+    @Input
+    public abstract Property<Boolean> getFuckit();
+
+    @Input
+    public abstract Property<Boolean> getDebug();
+
+    @Input
+    public abstract Property<Boolean> getNotrack();
+
+    @Optional
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getRuntime();
+
+    @Optional
+    @Input
+    public abstract Property<Integer> getJavaVersion();
+
+    @Input
+    public abstract Property<String> getJavaExecutable();
+
+    @Input
+    public abstract Property<String> getSkidfuscatorVersion();
+
+    /**
+     * The concrete Skidfuscator version, with {@code latest} already resolved.
+     */
+    @Input
+    public abstract Property<String> getResolvedVersion();
+
+    @Internal
+    public abstract Property<String> getConfigFileName();
+
+    /**
+     * Number of jars indexed concurrently during dependency analysis. Does not affect the result.
+     */
+    @Internal
+    public abstract Property<Integer> getAnalysisParallelism();
+
+    @Internal
+    public abstract Property<ExecutionMode> getExecutionMode();
+
+    /**
+     * Extra arguments for the JVM running Skidfuscator, in the fork and process execution modes.
+     */
+    @Internal
+    public abstract ListProperty<String> getJvmArgs();
+
+    /**
+     * Minutes after which an unused {@link ExecutionMode#DAEMON} daemon stops.
+     */
+    @Internal
+    public abstract Property<Integer> getDaemonIdleTimeoutMinutes();
+
+    @Internal
+    public abstract Property<String> getMinHeapSize();
+
+    @Internal
+    public abstract Property<String> getMaxHeapSize();
+
+    /**
+     * Whether forked runs get a heap predicted from earlier runs when no maximum heap size is set,
+     * and are retried once with a larger heap after running out of memory.
+     */
+    @Internal
+    public abstract Property<Boolean> getAdaptiveHeap();
+
+    /**
+     * Largest heap {@link #getAdaptiveHeap()} may predict or retry with.
+     */
+    @Internal
+    public abstract Property<String> getMaxHeapCeiling();
+
+    /**
+     * Whether the forked JVM creates and uses an AppCDS archive of the Skidfuscator jar.
+     */
+    @Internal
+    public abstract Property<Boolean> getClassDataSharing();
+
+    /**
+     * Scratch directory for the staged dependencies, the version marker and the generated config.
+     */
+    @Internal
+    public abstract DirectoryProperty getWorkingDirectory();
+
+    /**
+     * Cache of downloaded Skidfuscator releases, shared between projects.
+     */
+    @Internal
+    public abstract DirectoryProperty getDistributionDirectory();
+
+    @Internal
+    public abstract Property<String> getReleasesApiUrl();
+
+    @Internal
+    public abstract Property<String> getDownloadBaseUrl();
+
+    @Internal
+    public abstract Property<Integer> getLatestVersionCacheMinutes();
+
+    /**
+     * Expected SHA-256 of the Skidfuscator jar. When absent, the checksum published with the release is used.
+     */
+    @Internal
+    public abstract Property<String> getSkidfuscatorChecksum();
+
+    /**
+     * Whether Gradle runs with {@code --offline}, in which case only cached releases are used.
+     */
+    @Internal
+    public abstract Property<Boolean> getOffline();
+
+    /**
+     * Whether the libraries kept by the dependency analysis are passed to Skidfuscator as a single
+     * jar holding only the needed classes and their supertypes, instead of as whole jars.
+     */
+    @Input
+    @Optional
+    public abstract Property<Boolean> getSlimLibraries();
+
+    /**
+     * Whether the obfuscated jar is rewritten with {@link #getOutputCompressionLevel()} and a reproducible entry order.
+     */
+    @Input
+    @Optional
+    public abstract Property<Boolean> getRepackageOutput();
+
+    /**
+     * Deflate level from 1 to 9 used when repackaging, 0 stores entries uncompressed.
+     */
+    @Input
+    @Optional
+    public abstract Property<Integer> getOutputCompressionLevel();
+
+    /**
+     * An async-profiler collapsed stack file or a JFR recording, whose hottest methods are exempted
+     * from {@link #getHotMethodTransformers()}.
+     */
+    @Optional
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getHotMethodProfile();
+
+    /**
+     * Transformers the hot methods are exempted from, all enabled transformers when empty.
+     */
+    @Input
+    @Optional
+    public abstract ListProperty<String> getHotMethodTransformers();
+
+    /**
+     * At most this many of the hottest methods are exempted.
+     */
+    @Input
+    @Optional
+    public abstract Property<Integer> getHotMethodTop();
+
+    /**
+     * Only methods with at least this percentage of all samples are exempted, when set.
+     */
+    @Input
+    @Optional
+    public abstract Property<Integer> getHotMethodMinPercent();
+
+    /**
+     * Number of shards the input jar is split into for parallel obfuscation, 1 disables sharding.
+     */
+    @Input
+    @Optional
+    public abstract Property<Integer> getShards();
+
+    /**
+     * Whether classes matching {@code class{...}} excludes are kept out of Skidfuscator's input and
+     * copied into the obfuscated jar unchanged afterwards. Ignored while a transformer of
+     * {@link InputSharding#CROSS_CLASS_TRANSFORMERS} is enabled.
+     */
+    @Input
+    @Optional
+    public abstract Property<Boolean> getSplitExcludedClasses();
+
+    @Internal
+    public abstract Property<SkidfuscatorBuildService> getBuildService();
+
+    /**
+     * Only changes what is logged, so it is not an input.
+     */
+    @Internal
+    public abstract Property<SkidfuscatorLogLevel> getLogLevel();
+
+    /**
+     * How many performance reports are kept in {@code report-history.jsonl}.
+     */
+    @Internal
+    public abstract Property<Integer> getReportHistorySize();
+
+    @Optional
+    @OutputFile
+    public abstract RegularFileProperty getOutputJar();
+
+    @TaskAction
+    public void obfuscate() {
+        final File skidDir = getWorkingDirectory().get().getAsFile();
+        if (!skidDir.exists()) {
+            skidDir.mkdirs();
+        }
+
+        final PerformanceReport report = new PerformanceReport();
+        final SkidfuscatorOutput output;
+        try {
+            output = new SkidfuscatorOutput(new File(skidDir, "skidfuscator.log"), getLogger(),
+                    getLogLevel().getOrElse(SkidfuscatorLogLevel.SUMMARY));
+        } catch (IOException e) {
+            throw new GradleException("Failed to create Skidfuscator log file: " + e.getMessage(), e);
+        }
+
+        try {
+            obfuscate(skidDir, report, output);
+        } finally {
+            try {
+                output.close();
+            } catch (IOException e) {
+                getLogger().warn("Failed to write Skidfuscator log file: " + e.getMessage());
+            }
+            report.counter("outputErrors", output.getErrors());
+            report.counter("outputWarnings", output.getWarnings());
+
+            final File reportFile = new File(skidDir, "report.json");
+            try {
+                report.write(reportFile);
+                report.appendTo(new File(skidDir, "report-history.jsonl"), getReportHistorySize().getOrElse(100));
+            } catch (IOException e) {
+                getLogger().warn("Failed to write performance report: " + e.getMessage());
+            }
+            getLogger().lifecycle(report.summary());
+        }
+    }
+
+    private void obfuscate(File skidDir, PerformanceReport report, SkidfuscatorOutput output) {
+        // A batch runs as a regular run over the combined classes of its jars
+        final List<BatchJarSpec> batchJars = batchJars();
+        final File batchInput = batchJars.isEmpty() ? null : new File(skidDir, "combined.jar");
+        final JarBatch batch = batchInput == null ? null : combineBatch(batchJars, batchInput, report);
+
+        try (PreparationStages stages = new PreparationStages(PREPARATION_PARALLELISM)) {
+            obfuscate(skidDir, report, output, stages, batchInput);
+        }
+
+        if (batch != null) {
+            distributeBatch(batch, batchJars, report);
+        }
+    }
+
+    private void obfuscate(File skidDir, PerformanceReport report, SkidfuscatorOutput output, PreparationStages stages,
+                           File batchInput) {
+        final Logger logger = getLogger();
+        final SkidfuscatorExecutionConfig executionConfig = snapshot(batchInput);
+
+        // Preparation runs as stages that only wait for what they need, so their phases overlap.
+        // Providers and services are only read on this thread, stages get plain values and only touch
+        // files and the build service's own state.
+        final Set<File> classpath = getClasspath().getFiles();
+        final SkidfuscatorBuildService buildService = getBuildService().get();
+        final SkidfuscatorDistributions distributions = distributions(logger);
+        final String checksum = getSkidfuscatorChecksum().getOrNull();
+        final int analysisParallelism = getAnalysisParallelism().getOrElse(1);
+        final boolean slimLibraries = getSlimLibraries().getOrElse(false);
+
+        final CompletableFuture<List<File>> dependenciesStage = stages.start(() -> {
+            final long start = System.nanoTime();
+            final List<File> staged = collectDependencies(classpath, skidDir, logger, report, output);
+            report.phase("dependencies", start);
+            return staged;
+        });
+
+        // Already resolved when Gradle fingerprinted the task's inputs, so there is nothing to time
+        final String version = getResolvedVersion().get();
+        report.counter("skidfuscatorVersion", version);
+
+        final CompletableFuture<File> downloadStage = stages.start(() -> {
+            final long start = System.nanoTime();
+            try {
+                return buildService.resolveJar(distributions, version, checksum);
+            } catch (IOException e) {
+                throw new GradleException("Failed to download Skidfuscator: " + e.getMessage(), e);
+            } finally {
+                report.phase("download", start);
+            }
+        });
+
+        if (executionConfig.input == null) {
+            stages.await(dependenciesStage);
+            stages.await(downloadStage);
+            logger.lifecycle("No skidfuscator.input configured, skipping obfuscation.");
+            report.outcome("skipped");
+            return;
+        }
+
+        final File outputJar = executionConfig.input;
+        report.counter("inputBytes", outputJar.length());
+
+        final CompletableFuture<String> fingerprintStage = stages.start(() -> {
+            final long start = System.nanoTime();
+            try {
+                return JarFingerprint.of(outputJar);
+            } catch (IOException e) {
+                throw new GradleException("Failed to fingerprint input jar: " + e.getMessage(), e);
+            } finally {
+                report.phase("fingerprint", start);
+            }
+        });
+
+        final CompletableFuture<List<String>> analysisStage = stages.both(dependenciesStage, fingerprintStage, (staged, fingerprint) -> {
+            final long start = System.nanoTime();
+            final List<String> libs = reduceDependencies(executionConfig, skidDir, outputJar, fingerprint, staged,
+                    analysisParallelism, buildService.getIndexes(), slimLibraries, logger, report, output);
+            report.phase("analysis", start);
+            return libs;
+        });
+
+        // Excluded classes are handed to Skidfuscator as a library only and merged back afterwards.
+        // Calls from them would miss signature changes of transformers working across classes.
+        final boolean splitExcluded = getSplitExcludedClasses().getOrElse(false);
+        final List<String> crossClass = splitExcluded
+                ? InputSharding.crossClassTransformers(executionConfig.transformers)
+                : Collections.emptyList();
+        if (!crossClass.isEmpty()) {
+            logger.lifecycle("Not splitting excluded classes out of the input jar, " + String.join(", ", crossClass)
+                    + " would change methods they call. Disable them to split.");
+        }
+        final ExcludedClassSplitter splitter = splitExcluded && crossClass.isEmpty()
+                ? ExcludedClassSplitter.of(executionConfig.exclude)
+                : null;
+        final File splitDir = new File(skidDir, "split");
+        final File included = new File(splitDir, "input.jar");
+        final File excluded = new File(splitDir, "excluded.jar");
+        final CompletableFuture<Boolean> splitStage = splitter == null
+                ? CompletableFuture.completedFuture(false)
+                : stages.start(() -> {
+                    final long start = System.nanoTime();
+                    try {
+                        if (!splitDir.exists() && !splitDir.mkdirs()) {
+                            throw new IOException("Failed to create directory: " + splitDir.getAbsolutePath());
+                        }
+                        final int excludedCount = splitter.split(outputJar, included, excluded);
+                        report.counter("excludedClasses", excludedCount);
+                        if (excludedCount > 0) {
+                            logger.lifecycle("Split " + excludedCount + " excluded classes out of the input jar.");
+                        }
+                        return excludedCount > 0;
+                    } catch (IOException e) {
+                        logger.warn("Failed to split excluded classes out of the input jar, obfuscating it whole: " + e.getMessage());
+                        return false;
+                    } finally {
+                        report.phase("split", start);
+                    }
+                });
+
+        // The toolchain service may provision a JDK, which runs here while the stages above do their work
+        final String javaExecutable = resolveJavaExecutable(executionConfig, logger);
+
+        final File skidJar = stages.await(downloadStage);
+        final String inputFingerprint = stages.await(fingerprintStage);
+        final List<String> effectiveLibs = stages.await(analysisStage);
+        report.counter("librariesAfterReduction", effectiveLibs.size());
+
+        File skidInput = outputJar;
+        File excludedClasses = null;
+        if (stages.await(splitStage)) {
+            skidInput = included;
+            excludedClasses = excluded;
+            effectiveLibs.add(0, excluded.getAbsolutePath());
+        }
+        report.counter("skidfuscatorInputBytes", skidInput.length());
+
+        long phaseStart;
+        if (getHotMethodProfile().isPresent()) {
+            phaseStart = System.nanoTime();
+            exemptHotMethods(executionConfig, skidInput, getHotMethodProfile().get().getAsFile(),
+                    new File(skidDir, "hot-methods.txt"), report);
+            report.phase("profile", phaseStart);
+        }
+
+        phaseStart = System.nanoTime();
+        File configFile = new File(skidDir, executionConfig.configFileName);
+        try {
+            writeHoconConfig(executionConfig, effectiveLibs, configFile);
+        } catch (IOException e) {
+            throw new GradleException("Failed to write config file: " + e.getMessage(), e);
+        }
+        report.phase("config", phaseStart);
+
+        final File costDir = costReportDirectory();
+        if (costDir != null) {
+            analyzeTransformerCosts(executionConfig, effectiveLibs, skidInput, costDir, skidJar,
+                    javaExecutable, output);
+            report.outcome("costReport");
+            return;
+        }
+
+        File resultJar = executionConfig.output;
+
+        final List<String> args = skidfuscatorArgs(executionConfig, configFile, resultJar, skidInput);
+        final int shards = Math.max(1, getShards().getOrElse(1));
+
+        final PreviousOutput previousOutput = new PreviousOutput(new File(skidDir, "previous"));
+        final String runKey;
+        try {
+            runKey = runKey(executionConfig, inputFingerprint, version, configFile, args, shards);
+            if (previousOutput.restore(runKey, resultJar)) {
+                logger.lifecycle("Input classes unchanged, reused previous obfuscated jar at " + resultJar.getAbsolutePath());
+                report.counter("outputBytes", resultJar.length());
+                report.outcome("reused");
+                return;
+            }
+        } catch (IOException e) {
+            throw new GradleException("Failed to read Skidfuscator settings: " + e.getMessage(), e);
+        }
+
+        logger.lifecycle("Running Skidfuscator...");
+
+        phaseStart = System.nanoTime();
+        try {
+            final boolean sharded = shards > 1 && executeSharded(executionConfig, skidDir, skidInput, effectiveLibs, resultJar,
+                    shards, javaExecutable, skidJar, buildService, report, output);
+            if (!sharded) {
+                final int slots = acquireSlots(buildService, skidInput.length(), report);
+                try {
+                    execute(getExecutionMode().getOrElse(ExecutionMode.FORK), executionConfig, javaExecutable, skidJar,
+                            args, new File(skidDir, "probe"), report, output);
+                } finally {
+                    buildService.release(slots);
+                }
+            }
+        } finally {
+            report.phase("skidfuscator", phaseStart);
+        }
+        if (excludedClasses != null) {
+            phaseStart = System.nanoTime();
+            try {
+                ExcludedClassSplitter.merge(resultJar, excludedClasses);
+            } catch (IOException e) {
+                throw new GradleException("Failed to merge excluded classes into the obfuscated jar: " + e.getMessage(), e);
+            }
+            report.phase("merge", phaseStart);
+        }
+        if (getRepackageOutput().getOrElse(false)) {
+            phaseStart = System.nanoTime();
+            try {
+                new OutputRepackager(getOutputCompressionLevel().getOrElse(6),
+                        Runtime.getRuntime().availableProcessors()).repackage(resultJar);
+            } catch (IOException | IllegalArgumentException e) {
+                throw new GradleException("Failed to repackage the obfuscated jar: " + e.getMessage(), e);
+            }
+            report.phase("repackage", phaseStart);
+        }
+
+        report.counter("outputBytes", resultJar.length());
+        report.outcome("obfuscated");
+
+        try {
+            previousOutput.record(runKey, resultJar);
+        } catch (IOException e) {
+            logger.warn("Failed to keep obfuscated jar for reuse: " + e.getMessage());
+        }
+
+        logger.lifecycle("Skidfuscation complete! Obfuscated jar at " + resultJar.getAbsolutePath());
+    }
+
+    /**
+     * Adds the hottest methods of the profile to the exempt lists of the targeted transformers, see {@link HotMethodProfile}.
+     */
+    @SuppressWarnings("unchecked")
+    private void exemptHotMethods(SkidfuscatorExecutionConfig executionConfig, File input, File profile, File reportFile,
+                                  PerformanceReport report) {
+        final Logger logger = getLogger();
+        final List<String> targets = new ArrayList<>(getHotMethodTransformers().getOrElse(Collections.emptyList()));
+        if (targets.isEmpty()) {
+            for (Map.Entry<String, Object> transformer : executionConfig.transformers.entrySet()) {
+                if (transformer.getValue() instanceof Map
+                        && !Boolean.FALSE.equals(((Map<String, Object>) transformer.getValue()).get("enabled"))) {
+                    targets.add(transformer.getKey());
+                }
+            }
+            Collections.sort(targets);
+        }
+        targets.removeIf(name -> !(executionConfig.transformers.get(name) instanceof Map));
+        if (targets.isEmpty()) {
+            logger.warn("A hot method profile is set, but no configured transformer can exempt methods.");
+            return;
+        }
+
+        final int top = getHotMethodTop().getOrElse(20);
+        final Integer minPercent = getHotMethodMinPercent().getOrNull();
+        final List<HotMethodProfile.HotMethod> hottest;
+        final long totalSamples;
+        try {
+            final Set<String> classes = new HashSet<>();
+            for (String entry : classNames(input)) {
+                classes.add(entry.substring(0, entry.length() - ".class".length()));
+            }
+            final HotMethodProfile hotMethods = HotMethodProfile.read(profile);
+            hottest = hotMethods.hottest(classes, top, minPercent);
+            totalSamples = hotMethods.getTotalSamples();
+        } catch (IOException e) {
+            throw new GradleException("Failed to read hot method profile " + profile.getAbsolutePath() + ": " + e.getMessage(), e);
+        }
+
+        for (String target : targets) {
+            final Map<String, Object> transformer = new HashMap<>((Map<String, Object>) executionConfig.transformers.get(target));
+            final List<String> exempt = transformer.get("exempt") instanceof List
+                    ? new ArrayList<>((List<String>) transformer.get("exempt"))
+                    : new ArrayList<>();
+            for (HotMethodProfile.HotMethod method : hottest) {
+                exempt.add(method.exemption());
+            }
+            transformer.put("exempt", exempt);
+            executionConfig.transformers.put(target, transformer);
+        }
+
+        final String reason = minPercent == null
+                ? "among the " + top + " hottest methods"
+                : "at least " + minPercent + "% of all samples, among the " + top + " hottest methods";
+        final List<String> lines = new ArrayList<>();
+        lines.add("Profile: " + profile.getAbsolutePath() + " (" + totalSamples + " samples)");
+        lines.add("Exempted from: " + String.join(", ", targets));
+        lines.add("Selected as: " + reason);
+        lines.add("");
+        for (HotMethodProfile.HotMethod method : hottest) {
+            lines.add(String.format(Locale.ROOT, "%6.2f%% %10d  %s.%s", method.percent, method.samples, method.owner, method.name));
+        }
+        try {
+            Files.write(reportFile.toPath(), lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("Failed to write the hot method report: " + e.getMessage());
+        }
+        report.counter("hotMethodsExempted", hottest.size());
+        logger.lifecycle("Exempted " + hottest.size() + " hot methods from " + String.join(", ", targets)
+                + ", see " + reportFile.getAbsolutePath());
+    }
+
+    /**
+     * Where {@link SkidfuscatorCostReportTask} writes its report, {@code null} for a regular run.
+     */
+    protected File costReportDirectory() {
+        return null;
+    }
+
+    /**
+     * The jars {@link SkidfuscatorBatchTask} obfuscates together, empty for a regular run.
+     */
+    protected List<BatchJarSpec> batchJars() {
+        return Collections.emptyList();
+    }
+
+    private JarBatch combineBatch(List<BatchJarSpec> batchJars, File combined, PerformanceReport report) {
+        final long phaseStart = System.nanoTime();
+        final List<File> inputs = new ArrayList<>(batchJars.size());
+        for (BatchJarSpec jar : batchJars) {
+            inputs.add(jar.getInput().get().getAsFile());
+        }
+        final JarBatch batch;
+        try {
+            batch = JarBatch.combine(inputs, combined);
+        } catch (IOException e) {
+            throw new GradleException("Failed to combine the batch jars: " + e.getMessage(), e);
+        }
+        getLogger().lifecycle("Combined " + batch.getClassCount() + " classes of " + inputs.size() + " jars into one input.");
+        report.counter("batchJars", inputs.size());
+        report.phase("combine", phaseStart);
+        return batch;
+    }
+
+    private void distributeBatch(JarBatch batch, List<BatchJarSpec> batchJars, PerformanceReport report) {
+        final long phaseStart = System.nanoTime();
+        final List<File> outputs = new ArrayList<>(batchJars.size());
+        for (BatchJarSpec jar : batchJars) {
+            outputs.add(jar.getOutput().get().getAsFile());
+        }
+        try {
+            final int added = batch.distribute(getOutputJar().get().getAsFile(), outputs);
+            if (added > 0) {
+                getLogger().lifecycle("Skidfuscator added " + added + " classes, they were written to every jar of the batch.");
+            }
+        } catch (IOException e) {
+            throw new GradleException("Failed to split the obfuscated batch into its jars: " + e.getMessage(), e);
+        }
+        report.phase("distribute", phaseStart);
+        for (int i = 0; i < batchJars.size(); i++) {
+            getLogger().lifecycle("Obfuscated " + batchJars.get(i).getName() + " at " + outputs.get(i).getAbsolutePath());
+        }
+    }
+
+    /**
+     * Measures the transformers with {@link TransformerCostReport}. Runs share the build service's
+     * obfuscation slots, so they run in parallel within its memory budget.
+     */
+    private void analyzeTransformerCosts(SkidfuscatorExecutionConfig executionConfig, List<String> libs, File input,
+                                         File costDir, File skidJar, String javaExecutable, SkidfuscatorOutput output) {
+        final SkidfuscatorBuildService buildService = getBuildService().get();
+        final boolean warmUp = executionConfig.classDataSharing
+                && ClassDataSharing.createsArchive(skidJar, javaExecutable, executionConfig.javaVersion);
+        new TransformerCostReport(costDir, getLogger()).measure(executionConfig.transformers, executionConfig.output,
+                buildService.getMaxSlots(), warmUp, output, (transformers, dir, result) -> {
+                    final File configFile = new File(dir, "skidfuscator.conf");
+                    writeHoconConfig(executionConfig, transformers, libs, configFile);
+                    final List<String> args = skidfuscatorArgs(executionConfig, configFile, result, input);
+                    final SkidfuscatorExecutionConfig runConfig = executionConfig.withHeapHistory(new File(dir, "heap-history.txt"));
+                    return runOutput -> {
+                        final int slots = buildService.acquire(input.length());
+                        try {
+                            final long start = System.nanoTime();
+                            execute(ExecutionMode.FORK, runConfig, javaExecutable, skidJar, args, new File(dir, "probe"),
+                                    new PerformanceReport(), runOutput);
+                            return (System.nanoTime() - start) / 1_000_000;
+                        } finally {
+                            buildService.release(slots);
+                        }
+                    };
+                });
+    }
+
+    private List<String> skidfuscatorArgs(SkidfuscatorExecutionConfig executionConfig, File configFile, File output, File input) {
+        List<String> args = new ArrayList<>();
+        args.add("obfuscate");
+        args.add("-cfg"); args.add(configFile.getAbsolutePath());
+        args.add("-o"); args.add(output.getAbsolutePath());
+        if (getLogLevel().getOrElse(SkidfuscatorLogLevel.SUMMARY) == SkidfuscatorLogLevel.DEBUG) {
+            args.add("--debug");
+        }
+
+        if (executionConfig.phantom) args.add("-ph");
+        if (executionConfig.fuckit) args.add("-fuckit");
+        if (executionConfig.debug) args.add("-dbg");
+        if (executionConfig.notrack) args.add("-notrack");
+
+        if (executionConfig.runtime != null) {
+            args.add("-rt");
+            args.add(executionConfig.runtime.getAbsolutePath());
+        }
+
+        // Input jar last
+        args.add(input.getAbsolutePath());
+        return args;
+    }
+
+    /**
+     * Obfuscates the input in shards running in parallel forked JVMs, see {@link InputSharding}.
+     *
+     * Each shard gets the other shards as additional libraries and logs to a {@code shard-<n>.log}
+     * of its own. The shard outputs are merged into the result jar, which must then contain every
+     * class of the input.
+     *
+     * @return {@code false} when the input cannot be split, or a transformer that rewrites references
+     *         across classes is enabled, in which case nothing was run
+     */
+    private boolean executeSharded(SkidfuscatorExecutionConfig executionConfig, File skidDir, File input, List<String> libs,
+                                   File resultJar, int shards, String javaExecutable, File skidJar,
+                                   SkidfuscatorBuildService buildService, PerformanceReport report,
+                                   SkidfuscatorOutput output) {
+        final Logger logger = getLogger();
+        final List<String> crossClass = InputSharding.crossClassTransformers(executionConfig.transformers);
+        if (!crossClass.isEmpty()) {
+            logger.lifecycle("Not sharding the input jar, " + String.join(", ", crossClass) + " would rewrite references"
+                    + " between shards. Obfuscating it whole, disable them to shard.");
+            return false;
+        }
+
+        final File shardDir = new File(skidDir, "shards");
+        final InputSharding sharding;
+        final List<File> shardJars;
+        try {
+            sharding = InputSharding.plan(input, shards);
+            if (sharding == null) {
+                logger.lifecycle("The input jar cannot be split into shards, obfuscating it whole.");
+                return false;
+            }
+            shardJars = sharding.write(shardDir);
+        } catch (IOException e) {
+            throw new GradleException("Failed to split the input jar into shards: " + e.getMessage(), e);
+        }
+        if (getExecutionMode().getOrElse(ExecutionMode.FORK) != ExecutionMode.FORK) {
+            logger.info("Shards always run in forked JVMs.");
+        }
+        logger.lifecycle("Obfuscating " + shardJars.size() + " shards in parallel...");
+        report.counter("shards", shardJars.size());
+
+        final List<File> shardOutputs = new ArrayList<>(shardJars.size());
+        final List<Callable<Void>> runs = new ArrayList<>(shardJars.size());
+        for (int i = 0; i < shardJars.size(); i++) {
+            final List<String> shardLibs = new ArrayList<>(libs);
+            for (int j = 0; j < shardJars.size(); j++) {
+                if (j != i) {
+                    shardLibs.add(shardJars.get(j).getAbsolutePath());
+                }
+            }
+
+            final File shardConfig = new File(shardDir, "shard-" + i + ".conf");
+            final File shardOutput = new File(shardDir, "shard-" + i + "-obf.jar");
+            try {
+                writeHoconConfig(executionConfig, shardLibs, shardConfig);
+            } catch (IOException e) {
+                throw new GradleException("Failed to write config file: " + e.getMessage(), e);
+            }
+            shardOutputs.add(shardOutput);
+
+            final List<String> shardArgs = skidfuscatorArgs(executionConfig, shardConfig, shardOutput, shardJars.get(i));
+            final File probeDir = new File(skidDir, "probe/shard-" + i);
+            final String shardName = "shard-" + i;
+            final long shardBytes = shardJars.get(i).length();
+            runs.add(() -> {
+                final int slots = acquireSlots(buildService, shardBytes, report);
+                try (SkidfuscatorOutput shardLog = output.forRun(shardName, new File(shardDir, shardName + ".log"))) {
+                    execute(ExecutionMode.FORK, executionConfig, javaExecutable, skidJar, shardArgs, probeDir, report, shardLog);
+                } finally {
+                    buildService.release(slots);
+                }
+                return null;
+            });
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(runs.size());
+        try {
+            for (Future<Void> run : pool.invokeAll(runs)) {
+                run.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GradleException("Interrupted while obfuscating shards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GradleException("Failed to obfuscate a shard: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        try {
+            final int renamed = sharding.merge(shardOutputs, resultJar);
+            if (renamed > 0) {
+                logger.lifecycle("Renamed " + renamed + " classes that several shards added with different content.");
+            }
+            report.counter("shardClassesRenamed", renamed);
+            final Set<String> missing = classNames(input);
+            missing.removeAll(classNames(resultJar));
+            if (!missing.isEmpty()) {
+                throw new GradleException("The merged shards are missing " + missing.size() + " classes of the input, e.g. "
+                        + missing.iterator().next() + ". Run without sharding.");
+            }
+        } catch (IOException e) {
+            throw new GradleException("Failed to merge obfuscated shards: " + e.getMessage(), e);
+        }
+        return true;
+    }
+
+    /**
+     * Takes the build service slots for one Skidfuscator JVM. Shards each take their own, so
+     * parallel shards count against the limit like separate runs do.
+     */
+    private static int acquireSlots(SkidfuscatorBuildService buildService, long inputBytes, PerformanceReport report) {
+        final long start = System.nanoTime();
+        final int slots;
+        try {
+            slots = buildService.acquire(inputBytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GradleException("Interrupted while waiting for a free obfuscation slot", e);
+        }
+        report.phase("queue", start);
+        report.max("obfuscationSlots", slots);
+        return slots;
+    }
+
+    private static Set<String> classNames(File jar) throws IOException {
+        final Set<String> names = new HashSet<>();
+        try (JarFile jarFile = new JarFile(jar)) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.endsWith(".class")) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Identifies a run by the input jar's class content and everything else Skidfuscator is given.
+     */
+    private String runKey(SkidfuscatorExecutionConfig executionConfig, String inputFingerprint, String resolvedVersion,
+                          File configFile, List<String> args, int shards) throws IOException {
+        final StringBuilder key = new StringBuilder();
+        key.append(inputFingerprint).append('\n');
+        key.append(resolvedVersion).append('\n');
+        key.append(String.join(" ", args)).append('\n');
+        key.append("shards=").append(shards).append('\n');
+        if (getRepackageOutput().getOrElse(false)) {
+            key.append("repackage=").append(getOutputCompressionLevel().getOrElse(6)).append('\n');
+        }
+        key.append(new String(Files.readAllBytes(configFile.toPath()), "UTF-8")).append('\n');
+        if (executionConfig.runtime != null) {
+            key.append(FileHashes.sha256(executionConfig.runtime)).append('\n');
+        }
+        // Staged libraries are content addressed already, user supplied ones are not
+        for (String lib : executionConfig.libs) {
+            File file = new File(lib);
+            if (file.isFile()) {
+                key.append(FileHashes.sha256(file)).append('\n');
+            }
+        }
+
+        final MessageDigest digest = FileHashes.sha256();
+        digest.update(key.toString().getBytes("UTF-8"));
+        return FileHashes.hex(digest.digest());
+    }
+
+    private void execute(ExecutionMode mode, SkidfuscatorExecutionConfig executionConfig, String javaExecutable, File skidJar,
+                         List<String> args, File probeDir, PerformanceReport report, SkidfuscatorOutput output) {
+        final Integer javaVersion = executionConfig.javaVersion;
+        final String minHeap = executionConfig.minHeap;
+        final String maxHeap = executionConfig.maxHeap;
+        final List<String> jvmArgs = executionConfig.jvmArgs;
+
+        if (mode == ExecutionMode.DAEMON) {
+            final List<String> daemonJvmArgs = new ArrayList<>();
+            if (minHeap != null) daemonJvmArgs.add("-Xms" + minHeap);
+            if (maxHeap != null) daemonJvmArgs.add("-Xmx" + maxHeap);
+            daemonJvmArgs.addAll(jvmArgs);
+
+            final int status;
+            try {
+                status = new SkidfuscatorDaemonClient(
+                        executionConfig.daemonDirectory,
+                        skidJar,
+                        javaExecutable,
+                        daemonJvmArgs,
+                        executionConfig.daemonIdleTimeoutMinutes,
+                        getLogger()
+                ).run(args, output.stdout(), output.stderr());
+            } catch (IOException e) {
+                getLogger().warn("Skidfuscator daemon unavailable, running in a forked JVM instead: " + e.getMessage());
+                execute(ExecutionMode.FORK, executionConfig, javaExecutable, skidJar, args, probeDir, report, output);
+                return;
+            }
+            if (status != 0) {
+                throw new GradleException("Skidfuscator exited with status " + status);
+            }
+            return;
+        }
+
+        if (mode == ExecutionMode.FORK) {
+            final List<String> cdsArgs = executionConfig.classDataSharing
+                    ? ClassDataSharing.jvmArgs(skidJar, javaExecutable, javaVersion, getLogger())
+                    : Collections.emptyList();
+            final File probeStats = new File(probeDir, "stats.properties");
+            final String probeArg = ClassDataSharing.dumpsArchive(cdsArgs) ? null : probeArgument(probeDir, probeStats);
+            final boolean adaptive = executionConfig.adaptiveHeap;
+            final List<String> forkJvmArgs = new ArrayList<>(jvmArgs);
+            forkJvmArgs.addAll(cdsArgs);
+            if (probeArg != null) forkJvmArgs.add(probeArg);
+
+            // The input jar is always the last argument
+            final long inputBytes = new File(args.get(args.size() - 1)).length();
+            final HeapSizing sizing = new HeapSizing(executionConfig.heapHistory);
+            final long ceiling = executionConfig.maxHeapCeiling;
+
+            String heap = maxHeap;
+            if (adaptive) {
+                forkJvmArgs.add("-XX:+ExitOnOutOfMemoryError");
+                if (heap == null) {
+                    try {
+                        final Long predicted = sizing.predict(inputBytes);
+                        if (predicted != null) {
+                            heap = HeapSizing.format(Math.min(predicted, ceiling));
+                            report.max("predictedHeapBytes", predicted);
+                            getLogger().info("Running Skidfuscator with a predicted heap of " + heap);
+                        }
+                    } catch (IOException e) {
+                        getLogger().info("Failed to read the heap history: " + e.getMessage());
+                    }
+                }
+            }
+
+            int status;
+            try {
+                status = fork(javaExecutable, minHeap, heap, forkJvmArgs, skidJar, args, output);
+                if (status != 0 && adaptive && (status == OUT_OF_MEMORY_EXIT_STATUS || output.sawOutOfMemoryError())) {
+                    // Without -Xmx the run had the JVM's default heap, which may already exceed the ceiling
+                    final long current = heap == null ? HeapSizing.defaultMaxHeapBytes() : SkidfuscatorBuildService.parseSize(heap);
+                    final long retryHeap = Math.min(ceiling, current * 2);
+                    if (current == 0) {
+                        getLogger().warn("Skidfuscator ran out of memory with the default heap, set maxHeapSize to give it more.");
+                    } else if (retryHeap > current) {
+                        getLogger().warn("Skidfuscator ran out of memory" + (heap == null ? "" : " with -Xmx" + heap)
+                                + ", retrying with -Xmx" + HeapSizing.format(retryHeap));
+                        report.max("heapRetryBytes", retryHeap);
+                        status = fork(javaExecutable, minHeap, HeapSizing.format(retryHeap), forkJvmArgs, skidJar, args, output);
+                    } else {
+                        getLogger().warn("Skidfuscator ran out of memory with -Xmx" + HeapSizing.format(current)
+                                + ", raise maxHeapCeiling above " + HeapSizing.format(ceiling) + " to allow more.");
+                    }
+                }
+            } finally {
+                if (probeArg != null) {
+                    final Properties stats = readProbeStats(probeStats, report);
+                    final Long heapSample = adaptive && stats != null ? HeapSizing.sample(stats) : null;
+                    if (heapSample != null) {
+                        try {
+                            sizing.record(inputBytes, heapSample);
+                        } catch (IOException e) {
+                            getLogger().info("Failed to record the heap history: " + e.getMessage());
+                        }
+                    }
+                }
+            }
+            if (status != 0) {
+                throw new GradleException("Skidfuscator exited with status " + status);
+            }
+            return;
+        }
+
+        if (mode == ExecutionMode.CLASSLOADER && !SkidfuscatorWorkAction.canTrapExit()) {
+            getLogger().warn("The Gradle daemon's JVM does not allow trapping System.exit, running Skidfuscator in a forked JVM instead.");
+            execute(ExecutionMode.FORK, executionConfig, javaExecutable, skidJar, args, probeDir, report, output);
+            return;
+        }
+        final int workerVersion = mode == ExecutionMode.PROCESS ? workerFeatureVersion(javaExecutable) : -1;
+        if (mode == ExecutionMode.PROCESS && (workerVersion < 0 || workerVersion >= 24)) {
+            getLogger().warn((workerVersion < 0 ? "Cannot tell the Java version of the worker JVM" : "The worker JVM runs Java " + workerVersion)
+                    + ", where System.exit may not be trappable, running Skidfuscator in a forked JVM instead.");
+            execute(ExecutionMode.FORK, executionConfig, javaExecutable, skidJar, args, probeDir, report, output);
+            return;
+        }
+
+        final String mainClass;
+        try (JarFile jarFile = new JarFile(skidJar)) {
+            Manifest manifest = jarFile.getManifest();
+            mainClass = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.MAIN_CLASS);
+        } catch (IOException e) {
+            throw new GradleException("Failed to read Skidfuscator jar " + skidJar.getAbsolutePath(), e);
+        }
+        if (mainClass == null) {
+            throw new GradleException("Skidfuscator jar " + skidJar.getAbsolutePath() + " declares no Main-Class");
+        }
+
+        final WorkQueue queue;
+        if (mode == ExecutionMode.PROCESS) {
+            queue = getWorkerExecutor().processIsolation(spec -> {
+                spec.getClasspath().from(skidJar);
+                spec.forkOptions(options -> {
+                    // Workers need an absolute executable, a bare command keeps the JVM Gradle runs on
+                    if (new File(javaExecutable).isAbsolute()) {
+                        options.setExecutable(javaExecutable);
+                    }
+                    if (minHeap != null) options.setMinHeapSize(minHeap);
+                    if (maxHeap != null) options.setMaxHeapSize(maxHeap);
+                    options.jvmArgs(jvmArgs);
+                    // Java 12 to 23 only allow installing the exit trap when asked for up front
+                    if (workerVersion >= 12) {
+                        options.jvmArgs("-Djava.security.manager=allow");
+                    }
+                });
+            });
+        } else {
+            queue = getWorkerExecutor().classLoaderIsolation(spec -> spec.getClasspath().from(skidJar));
+        }
+
+        queue.submit(SkidfuscatorWorkAction.class, parameters -> {
+            parameters.getMainClass().set(mainClass);
+            parameters.getArguments().set(args);
+        });
+        queue.await();
+    }
+
+    /**
+     * The feature version of the JVM a {@link ExecutionMode#PROCESS} worker runs on, or -1 if unknown.
+     * Workers only get a different executable when it is absolute, otherwise they run on Gradle's JVM.
+     */
+    private static int workerFeatureVersion(String javaExecutable) {
+        if (new File(javaExecutable).isAbsolute()) {
+            return JavaInstallation.featureVersion(JavaInstallation.home(javaExecutable));
+        }
+        return JavaInstallation.featureVersion("JAVA_VERSION=\"" + System.getProperty("java.specification.version", "") + "\"");
+    }
+
+    /**
+     * Runs Skidfuscator in a forked JVM.
+     *
+     * @return the exit status
+     */
+    private int fork(String javaExecutable, String minHeap, String maxHeap, List<String> jvmArgs, File skidJar,
+                     List<String> args, SkidfuscatorOutput output) {
+        return getExecOperations().exec(spec -> {
+            spec.setExecutable(javaExecutable);
+            List<String> fullArgs = new ArrayList<>();
+            if (minHeap != null) fullArgs.add("-Xms" + minHeap);
+            if (maxHeap != null) fullArgs.add("-Xmx" + maxHeap);
+            fullArgs.addAll(jvmArgs);
+            fullArgs.add("-jar");
+            fullArgs.add(skidJar.getAbsolutePath());
+            fullArgs.addAll(args);
+            spec.setArgs(fullArgs);
+            spec.setStandardOutput(output.stdout());
+            spec.setErrorOutput(output.stderr());
+            spec.setIgnoreExitValue(true);
+        }).getExitValue();
+    }
+
+    /**
+     * Prepares the agent measuring the forked JVM, see {@link SkidfuscatorProbe}.
+     *
+     * @return the {@code -javaagent} argument, or {@code null} when the agent could not be written
+     */
+    private String probeArgument(File probeDir, File probeStats) {
+        final File agentJar = new File(probeDir, "skidfuscator-probe.jar");
+        try {
+            if (!probeDir.exists() && !probeDir.mkdirs()) {
+                throw new IOException("Failed to create directory: " + probeDir.getAbsolutePath());
+            }
+            Files.deleteIfExists(probeStats.toPath());
+            SkidfuscatorProbe.writeAgentJar(agentJar);
+        } catch (IOException e) {
+            getLogger().info("Not measuring the Skidfuscator process: " + e.getMessage());
+            return null;
+        }
+        return "-javaagent:" + agentJar.getAbsolutePath() + "=" + probeStats.getAbsolutePath();
+    }
+
+    /**
+     * @return the statistics the agent wrote, or {@code null} when there are none
+     */
+    private Properties readProbeStats(File probeStats, PerformanceReport report) {
+        if (!probeStats.exists()) {
+            return null;
+        }
+        final Properties stats = new Properties();
+        try (InputStream in = new FileInputStream(probeStats)) {
+            stats.load(in);
+        } catch (IOException e) {
+            getLogger().info("Failed to read Skidfuscator process statistics: " + e.getMessage());
+            return null;
+        }
+        for (String name : stats.stringPropertyNames()) {
+            try {
+                String key = "child" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+                report.max(key, Long.parseLong(stats.getProperty(name)));
+            } catch (NumberFormatException ignored) {
+                // Unknown values are left out of the report
+            }
+        }
+        return stats;
+    }
+
+    private SkidfuscatorExecutionConfig snapshot(File batchInput) {
+        return new SkidfuscatorExecutionConfig(
+                new ArrayList<>(getExempt().getOrElse(Collections.emptyList())),
+                new ArrayList<>(getExclude().getOrElse(Collections.emptyList())),
+                getLibs().getFiles().stream().map(File::getAbsolutePath).collect(Collectors.toList()),
+                new HashMap<>(getTransformers().getOrElse(Collections.emptyMap())),
+                getPhantom().getOrElse(false),
+                getFuckit().getOrElse(false),
+                getDebug().getOrElse(false),
+                getNotrack().getOrElse(false),
+                getRuntime().isPresent() ? getRuntime().get().getAsFile() : null,
+                batchInput != null ? batchInput : getInputJar().isPresent() ? getInputJar().get().getAsFile() : null,
+                getOutputJar().isPresent() ? getOutputJar().get().getAsFile() : null,
+                getConfigFileName().getOrElse("skidfuscator.conf"),
+                getJavaVersion().getOrNull(),
+                getJavaExecutable().getOrElse("java"),
+                getMinHeapSize().getOrNull(),
+                getMaxHeapSize().getOrNull(),
+                new ArrayList<>(getJvmArgs().getOrElse(Collections.emptyList())),
+                getClassDataSharing().getOrElse(false),
+                getAdaptiveHeap().getOrElse(false),
+                SkidfuscatorBuildService.parseSize("maxHeapCeiling", getMaxHeapCeiling().getOrElse("4g")),
+                new File(getWorkingDirectory().get().getAsFile(), "heap-history.txt"),
+                new File(getDistributionDirectory().get().getAsFile(), "daemons"),
+                getDaemonIdleTimeoutMinutes().getOrElse(180)
+        );
+    }
+
+    private String resolveJavaExecutable(SkidfuscatorExecutionConfig executionConfig, Logger logger) {
+        if (executionConfig.javaVersion != null) {
+            final Integer javaVersion = executionConfig.javaVersion;
+            try {
+                JavaLauncher launcher = getJavaToolchainService().launcherFor(spec ->
+                        spec.getLanguageVersion().set(JavaLanguageVersion.of(javaVersion))
+                ).get();
+
+                String executable = launcher.getExecutablePath().getAsFile().getAbsolutePath();
+                logger.lifecycle("Using Java toolchain version " + javaVersion + " for Skidfuscator.");
+                return executable;
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to resolve Java toolchain version " + javaVersion + " for Skidfuscator.", e);
+            }
+        }
+
+        if (executionConfig.javaExecutable != null && !executionConfig.javaExecutable.trim().isEmpty()) {
+            return executionConfig.javaExecutable;
+        }
+
+        return "java";
+    }
+
+    private List<File> collectDependencies(Collection<File> dependencies, File skidDir, Logger logger,
+                                           PerformanceReport report, SkidfuscatorOutput output) {
+        output.detail("Initial dependencies collected (" + dependencies.size() + "):");
+        dependencies.forEach(dep -> output.detail(" - " + dep.getAbsolutePath()));
+
+        final DependencyStager stager = new DependencyStager(
+                new File(skidDir, "dependencies"),
+                new File(skidDir, "dependencies.index"),
+                logger
+        );
+        final List<File> staged = stager.stage(dependencies);
+        report.counter("dependencies", dependencies.size());
+        report.counter("dependenciesLinked", stager.getLinked());
+        report.counter("dependenciesCopied", stager.getCopied());
+        report.counter("dependenciesReused", stager.getReused());
+        report.counter("bytesStaged", stager.getBytesCopied());
+        return staged;
+    }
+
+    /**
+     * The libraries to hand to Skidfuscator, the configured ones plus the staged dependencies the
+     * input actually uses, or all of them when the analysis fails.
+     */
+    private List<String> reduceDependencies(SkidfuscatorExecutionConfig executionConfig, File skidDir, File inputJar,
+                                            String inputFingerprint, List<File> stagedDependencies, int analysisParallelism,
+                                            ConcurrentMap<String, HierarchyIndex> indexes, boolean slimLibraries,
+                                            Logger logger, PerformanceReport report, SkidfuscatorOutput output) {
+        final List<String> effectiveLibs = new ArrayList<>(executionConfig.libs);
+        report.counter("librariesBeforeReduction", executionConfig.libs.size() + stagedDependencies.size());
+        if (stagedDependencies.isEmpty()) {
+            return effectiveLibs;
+        }
+
+        List<String> reduced;
+        final CachingDependencyAnalyzer analyzer = new CachingDependencyAnalyzer(
+                new File(skidDir, "analysis"),
+                analysisParallelism,
+                indexes,
+                logger
+        );
+
+        try {
+            final DependencyAnalysis result = analyzer.analyze(inputJar, inputFingerprint, stagedDependencies);
+            int classesNeeded = 0;
+            for(DependencyAnalysis.JarDependency jarDependency : result.getJarDependencies()) {
+                output.detail("JAR: " + jarDependency.getJarPath().getFileName());
+                output.detail("---------------------------------------------------");
+
+                for(DependencyAnalysis.ClassDependency classDep : jarDependency.getClassesNeeded()) {
+                    output.detail("  Class: " + classDep.getClassName());
+                    classesNeeded++;
+
+                    for(String reason : classDep.getReasons()) {
+                        output.detail("    - " + reason);
+                    }
+                }
+
+                output.detail("");
+            }
+            reduced = result.getJarDependencies().stream()
+                    .map(DependencyAnalysis.JarDependency::getJarPath)
+                    .map(Path::toString).collect(Collectors.toList());
+            logger.lifecycle("Reduced dependencies to " + reduced.size() + " of " + stagedDependencies.size()
+                    + " libraries, " + classesNeeded + " classes needed.");
+            report.counter("classesNeeded", classesNeeded);
+
+            if (slimLibraries && !reduced.isEmpty()) {
+                try {
+                    final File slimJar = new SlimLibraryWriter(new File(skidDir, "slim"), logger).write(result);
+                    reduced = Collections.singletonList(slimJar.getAbsolutePath());
+                    report.counter("slimLibraryBytes", slimJar.length());
+                } catch (IOException e) {
+                    logger.warn("Failed to write slim library jar, passing the reduced libraries instead: " + e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to minimize analyzed dependencies, falling back to full dependency set: " + e.getMessage(), e);
+            stagedDependencies.stream()
+                    .map(File::getAbsolutePath)
+                    .forEach(effectiveLibs::add);
+            reduced = Collections.emptyList();
+        }
+
+        effectiveLibs.addAll(reduced);
+        return effectiveLibs;
+    }
+
+    private SkidfuscatorDistributions distributions(Logger logger) {
+        return new SkidfuscatorDistributions(
+                getDistributionDirectory().get().getAsFile(),
+                getReleasesApiUrl().get(),
+                getDownloadBaseUrl().get(),
+                getLatestVersionCacheMinutes().get(),
+                getOffline().getOrElse(false),
+                logger
+        );
+    }
+
+    private void writeHoconConfig(SkidfuscatorExecutionConfig executionConfig, List<String> libs, File configFile) throws IOException {
+        writeHoconConfig(executionConfig, executionConfig.transformers, libs, configFile);
+    }
+
+    private void writeHoconConfig(SkidfuscatorExecutionConfig executionConfig, Map<String, Object> transformers, List<String> libs,
+                                  File configFile) throws IOException {
+        String rendered = renderConfig(executionConfig.exempt, executionConfig.exclude, transformers, libs);
+
+        try (FileWriter fw = new FileWriter(configFile)) {
+            fw.write(rendered);
+        }
+    }
+
+    /**
+     * Renders the HOCON config Skidfuscator reads, package visible for the plugin's benchmarks.
+     */
+    static String renderConfig(List<String> exempt, List<String> exclude, Map<String, Object> transformers, List<String> libs) {
+        Config config = buildConfig(exempt, exclude, transformers, libs);
+        return config.root().render(
+            ConfigRenderOptions.defaults()
+                .setComments(false)
+                .setJson(false)
+                .setOriginComments(false)
+        );
+    }
+
+    private static Config buildConfig(List<String> exempt, List<String> exclude, Map<String, Object> transformers, List<String> libs) {
+        Map<String, Object> rootMap = new HashMap<>();
+        rootMap.put("exempt", exempt);
+        rootMap.put("exclude", exclude);
+        rootMap.put("libraries", libs);
+        rootMap.putAll(transformers);
+
+        // Parse the map into a Config
+        return ConfigFactory.parseMap(rootMap);
+    }
+
+    private static final class SkidfuscatorExecutionConfig {
+        private final List<String> exempt;
+        private final List<String> exclude;
+        private final List<String> libs;
+        private final Map<String, Object> transformers;
+        private final boolean phantom;
+        private final boolean fuckit;
+        private final boolean debug;
+        private final boolean notrack;
+        private final File runtime;
+        private final File input;
+        private final File output;
+        private final String configFileName;
+        private final Integer javaVersion;
+        private final String javaExecutable;
+        // Read here rather than by execute(), which also runs on the shard and cost report threads
+        private final String minHeap;
+        private final String maxHeap;
+        private final List<String> jvmArgs;
+        private final boolean classDataSharing;
+        private final boolean adaptiveHeap;
+        private final long maxHeapCeiling;
+        private final File heapHistory;
+        private final File daemonDirectory;
+        private final int daemonIdleTimeoutMinutes;
+
+        private SkidfuscatorExecutionConfig(
+                List<String> exempt,
+                List<String> exclude,
+                List<String> libs,
+                Map<String, Object> transformers,
+                boolean phantom,
+                boolean fuckit,
+                boolean debug,
+                boolean notrack,
+                File runtime,
+                File input,
+                File output,
+                String configFileName,
+                Integer javaVersion,
+                String javaExecutable,
+                String minHeap,
+                String maxHeap,
+                List<String> jvmArgs,
+                boolean classDataSharing,
+                boolean adaptiveHeap,
+                long maxHeapCeiling,
+                File heapHistory,
+                File daemonDirectory,
+                int daemonIdleTimeoutMinutes
+        ) {
+            this.exempt = exempt;
+            this.exclude = exclude;
+            this.libs = libs;
+            this.transformers = transformers;
+            this.phantom = phantom;
+            this.fuckit = fuckit;
+            this.debug = debug;
+            this.notrack = notrack;
+            this.runtime = runtime;
+            this.input = input;
+            this.output = output;
+            this.configFileName = configFileName;
+            this.javaVersion = javaVersion;
+            this.javaExecutable = javaExecutable;
+            this.minHeap = minHeap;
+            this.maxHeap = maxHeap;
+            this.jvmArgs = jvmArgs;
+            this.classDataSharing = classDataSharing;
+            this.adaptiveHeap = adaptiveHeap;
+            this.maxHeapCeiling = maxHeapCeiling;
+            this.heapHistory = heapHistory;
+            this.daemonDirectory = daemonDirectory;
+            this.daemonIdleTimeoutMinutes = daemonIdleTimeoutMinutes;
+        }
+
+        /**
+         * A copy recording into another heap history, for runs whose heap says nothing about regular runs.
+         */
+        private SkidfuscatorExecutionConfig withHeapHistory(File heapHistory) {
+            return new SkidfuscatorExecutionConfig(exempt, exclude, libs, transformers, phantom, fuckit, debug, notrack,
+                    runtime, input, output, configFileName, javaVersion, javaExecutable, minHeap, maxHeap, jvmArgs,
+                    classDataSharing, adaptiveHeap, maxHeapCeiling, heapHistory, daemonDirectory, daemonIdleTimeoutMinutes);
+        }
+    }
+}
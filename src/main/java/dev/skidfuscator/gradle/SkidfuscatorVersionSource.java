@@ -0,0 +1,50 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.ValueSource;
+import org.gradle.api.provider.ValueSourceParameters;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Resolves the Skidfuscator version to use, see {@link SkidfuscatorDistributions#resolveVersion(String)}.
+ *
+ * As a value source it is evaluated when the task's inputs are fingerprinted rather than
+ * being stored in the configuration cache, so {@code latest} keeps following new releases.
+ */
+public abstract class SkidfuscatorVersionSource implements ValueSource<String, SkidfuscatorVersionSource.Parameters> {
+
+    public interface Parameters extends ValueSourceParameters {
+        Property<String> getRequestedVersion();
+
+        DirectoryProperty getDistributionDirectory();
+
+        Property<String> getReleasesApiUrl();
+
+        Property<String> getDownloadBaseUrl();
+
+        Property<Integer> getLatestVersionCacheMinutes();
+
+        Property<Boolean> getOffline();
+    }
+
+    @Override
+    public String obtain() {
+        final Parameters parameters = getParameters();
+        try {
+            return new SkidfuscatorDistributions(
+                    parameters.getDistributionDirectory().get().getAsFile(),
+                    parameters.getReleasesApiUrl().get(),
+                    parameters.getDownloadBaseUrl().get(),
+                    parameters.getLatestVersionCacheMinutes().get(),
+                    parameters.getOffline().get(),
+                    Logging.getLogger(SkidfuscatorVersionSource.class)
+            ).resolveVersion(parameters.getRequestedVersion().get());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to fetch latest Skidfuscator version: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.Permission;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Runs Skidfuscator's main class inside a Gradle worker, see {@link ExecutionMode}.
+ *
+ * The Skidfuscator jar is on the worker's classpath, so its main class is loaded
+ * through the classloader of this action.
+ */
+public abstract class SkidfuscatorWorkAction implements WorkAction<SkidfuscatorWorkAction.Parameters> {
+
+    public interface Parameters extends WorkParameters {
+        Property<String> getMainClass();
+
+        ListProperty<String> getArguments();
+    }
+
+    @Override
+    public void execute() {
+        final String mainClass = getParameters().getMainClass().get();
+        final String[] args = getParameters().getArguments().get().toArray(new String[0]);
+
+        final Thread thread = Thread.currentThread();
+        final ClassLoader previousLoader = thread.getContextClassLoader();
+        if (!ExitTrap.enter()) {
+            throw new GradleException("Cannot trap System.exit in this JVM, so Skidfuscator cannot run in-process. "
+                    + "Use executionMode FORK, or run Gradle on Java 17 or older.");
+        }
+        try {
+            thread.setContextClassLoader(getClass().getClassLoader());
+            Method main = getClass().getClassLoader().loadClass(mainClass).getMethod("main", String[].class);
+            main.invoke(null, (Object) args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (!(cause instanceof ExitTrap.ExitTrappedException)) {
+                throw new GradleException("Skidfuscator failed: " + cause, cause);
+            }
+            int status = ((ExitTrap.ExitTrappedException) cause).status;
+            if (status != 0) {
+                throw new GradleException("Skidfuscator exited with status " + status);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new GradleException("Could not start Skidfuscator main class " + mainClass, e);
+        } finally {
+            thread.setContextClassLoader(previousLoader);
+            ExitTrap.exit();
+        }
+    }
+
+    /**
+     * Whether {@code System.exit} can be trapped in this JVM, without changing anything.
+     * False on Java 18 and newer unless security managers were allowed on the command line,
+     * and when a security manager other than the trap is already installed.
+     */
+    @SuppressWarnings({"removal", "deprecation"})
+    static boolean canTrapExit() {
+        final SecurityManager current = System.getSecurityManager();
+        if (current != null) {
+            return ExitTrap.owners(current) != null;
+        }
+        final String version = System.getProperty("java.specification.version", "");
+        final int feature;
+        try {
+            feature = Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return feature <= 17 || "allow".equals(System.getProperty("java.security.manager"));
+    }
+
+    /**
+     * Turns {@code System.exit} from a running action's thread into an exception, so a CLI main that
+     * exits when done does not take the worker or the Gradle daemon down with it.
+     *
+     * One trap serves every action of the JVM. It is installed by the first action to enter and removed
+     * when the last one exits, and it only traps exits from the threads of actions still running. Actions
+     * may be loaded by different classloaders, each with its own copy of this class, so the trap is found
+     * through {@link System#getSecurityManager()} and shares its threads as a plain {@link Set}.
+     */
+    @SuppressWarnings({"removal", "deprecation"})
+    private static final class ExitTrap extends SecurityManager implements Supplier<Set<Thread>> {
+        private final Set<Thread> owners = Collections.synchronizedSet(new HashSet<>());
+
+        @Override
+        public Set<Thread> get() {
+            return owners;
+        }
+
+        /**
+         * Registers the current thread, installing the trap if no action is running yet.
+         *
+         * @return false if the trap is not installed and cannot be
+         */
+        static boolean enter() {
+            // A JDK class, so every copy of this class synchronizes on the same monitor
+            synchronized (SecurityManager.class) {
+                Set<Thread> owners = owners(System.getSecurityManager());
+                if (owners == null) {
+                    if (System.getSecurityManager() != null) {
+                        return false;
+                    }
+                    ExitTrap trap = new ExitTrap();
+                    try {
+                        System.setSecurityManager(trap);
+                    } catch (UnsupportedOperationException | SecurityException e) {
+                        // Security managers are disallowed on this JVM
+                        return false;
+                    }
+                    owners = trap.owners;
+                }
+                owners.add(Thread.currentThread());
+                return true;
+            }
+        }
+
+        /**
+         * Unregisters the current thread, removing the trap once no action is running.
+         */
+        static void exit() {
+            synchronized (SecurityManager.class) {
+                SecurityManager current = System.getSecurityManager();
+                Set<Thread> owners = owners(current);
+                if (owners == null) {
+                    return;
+                }
+                owners.remove(Thread.currentThread());
+                if (owners.isEmpty()) {
+                    System.setSecurityManager(null);
+                }
+            }
+        }
+
+        /**
+         * @return the threads trapped by the given security manager, or {@code null} if it is no trap
+         */
+        @SuppressWarnings("unchecked")
+        static Set<Thread> owners(SecurityManager manager) {
+            if (manager != null && manager.getClass().getName().equals(ExitTrap.class.getName())
+                    && manager instanceof Supplier) {
+                return ((Supplier<Set<Thread>>) manager).get();
+            }
+            return null;
+        }
+
+        @Override
+        public void checkExit(int status) {
+            if (owners.contains(Thread.currentThread())) {
+                throw new ExitTrappedException(status);
+            }
+        }
+
+        @Override
+        public void checkPermission(Permission perm) {
+            // Everything but exiting stays allowed
+        }
+
+        @Override
+        public void checkPermission(Permission perm, Object context) {
+        }
+
+        private static final class ExitTrappedException extends SecurityException {
+            private static final long serialVersionUID = 1L;
+
+            private final int status;
+
+            private ExitTrappedException(int status) {
+                super("System.exit(" + status + ") trapped");
+                this.status = status;
+            }
+        }
+    }
+}
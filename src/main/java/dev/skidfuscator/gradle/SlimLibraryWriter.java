@@ -0,0 +1,150 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.logging.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a single library jar holding only the classes the dependency analysis kept.
+ *
+ * The analysis already includes the transitive supertypes and interfaces of every needed
+ * class, so the slim jar is a closed hierarchy for Skidfuscator. Entries are stored without
+ * compression, which makes both writing and reading the jar cheap. The jar is named after a
+ * hash of the staged library names and kept classes; staged libraries are content addressed,
+ * so an existing jar with the same name is reused as is.
+ */
+final class SlimLibraryWriter {
+
+    private final File dir;
+    private final Logger logger;
+
+    SlimLibraryWriter(File dir, Logger logger) {
+        this.dir = dir;
+        this.logger = logger;
+    }
+
+    File write(DependencyAnalysis analysis) throws IOException {
+        final File jar = new File(dir, "libraries-" + key(analysis) + ".jar");
+        if (jar.isFile()) {
+            logger.info("Reusing slim library jar " + jar.getName());
+            return jar;
+        }
+
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create directory: " + dir.getAbsolutePath());
+        }
+        cleanup();
+
+        final File tmp = new File(dir, jar.getName() + ".tmp");
+        final Set<String> written = new HashSet<>();
+        final byte[] buffer = new byte[64 * 1024];
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(tmp))) {
+            out.setMethod(ZipOutputStream.STORED);
+            for (DependencyAnalysis.JarDependency jarDependency : analysis.getJarDependencies()) {
+                try (ZipFile zip = new ZipFile(jarDependency.getJarPath().toFile())) {
+                    for (DependencyAnalysis.ClassDependency classDependency : jarDependency.getClassesNeeded()) {
+                        final String name = classDependency.getClassName().replace('.', '/') + ".class";
+                        final ZipEntry source = zip.getEntry(name);
+                        // The first library on the classpath wins, as it would when loading the class
+                        if (source == null || !written.add(name)) {
+                            continue;
+                        }
+
+                        final ZipEntry entry = new ZipEntry(name);
+                        entry.setMethod(ZipEntry.STORED);
+                        entry.setTime(source.getTime());
+                        if (source.getSize() >= 0 && source.getCrc() >= 0) {
+                            entry.setSize(source.getSize());
+                            entry.setCompressedSize(source.getSize());
+                            entry.setCrc(source.getCrc());
+                            out.putNextEntry(entry);
+                            try (InputStream in = zip.getInputStream(source)) {
+                                int read;
+                                while ((read = in.read(buffer)) != -1) {
+                                    out.write(buffer, 0, read);
+                                }
+                            }
+                        } else {
+                            // Stored entries need their size and checksum up front
+                            final byte[] bytes = readAll(zip, source);
+                            final CRC32 crc = new CRC32();
+                            crc.update(bytes);
+                            entry.setSize(bytes.length);
+                            entry.setCompressedSize(bytes.length);
+                            entry.setCrc(crc.getValue());
+                            out.putNextEntry(entry);
+                            out.write(bytes);
+                        }
+                        out.closeEntry();
+                    }
+                }
+            }
+        }
+        Files.move(tmp.toPath(), jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        logger.lifecycle("Wrote slim library jar with " + written.size() + " classes from "
+                + analysis.getJarDependencies().size() + " libraries.");
+        return jar;
+    }
+
+    private static byte[] readAll(ZipFile zip, ZipEntry entry) throws IOException {
+        try (InputStream in = zip.getInputStream(entry)) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static String key(DependencyAnalysis analysis) {
+        final MessageDigest digest = FileHashes.sha256();
+        for (DependencyAnalysis.JarDependency jarDependency : analysis.getJarDependencies()) {
+            digest.update(jarDependency.getJarPath().getFileName().toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            for (DependencyAnalysis.ClassDependency classDependency : jarDependency.getClassesNeeded()) {
+                digest.update(classDependency.getClassName().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            digest.update((byte) 1);
+        }
+        return FileHashes.hex(digest.digest()).substring(0, 16);
+    }
+
+    /**
+     * Removes slim jars of earlier runs, only one is ever used.
+     */
+    private void cleanup() {
+        final File[] previous = dir.listFiles();
+        if (previous == null) {
+            return;
+        }
+        final List<File> failed = new ArrayList<>();
+        for (File file : previous) {
+            if (file.getName().startsWith("libraries-") && !file.delete()) {
+                failed.add(file);
+            }
+        }
+        if (!failed.isEmpty()) {
+            logger.info("Failed to remove old slim library jars: " + failed);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Attributes obfuscation time, jar size, methods and constant pool entries to the configured
+ * transformers, for {@link SkidfuscatorCostReportTask}.
+ *
+ * Skidfuscator runs once as configured and once per enabled transformer with only that one
+ * disabled. Every run has a directory of its own in the report directory for its config, output
+ * jar, log and heap history. The baseline result is the task's output jar.
+ */
+final class TransformerCostReport {
+
+    static final String BASELINE = "baseline";
+
+    /**
+     * Sets up the Skidfuscator run of one set of transformer settings.
+     */
+    interface Runs {
+        /**
+         * Writes what the run needs, called on the task thread.
+         *
+         * @param dir the run's own directory
+         * @param result where the run writes its obfuscated jar
+         */
+        Run prepare(Map<String, Object> transformers, File dir, File result) throws IOException;
+    }
+
+    interface Run {
+        /**
+         * @return how many milliseconds Skidfuscator ran
+         */
+        long run(SkidfuscatorOutput output) throws Exception;
+    }
+
+    private final File reportDir;
+    private final Logger logger;
+
+    TransformerCostReport(File reportDir, Logger logger) {
+        this.reportDir = reportDir;
+        this.logger = logger;
+    }
+
+    /**
+     * Runs every variant and writes the report.
+     *
+     * @param parallelism the most runs at the same time
+     * @param warmUp whether the baseline runs alone first, for runs that would otherwise all write the
+     *               same class data sharing archive. Its time is not measured.
+     */
+    void measure(Map<String, Object> transformers, File baselineResult, int parallelism, boolean warmUp,
+                 SkidfuscatorOutput output, Runs runs) {
+        final Map<String, Map<String, Object>> variants = variants(transformers);
+        if (variants.size() == 1) {
+            logger.warn("No enabled transformers to measure, only the baseline is run.");
+        }
+
+        final Map<String, Run> prepared = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, Object>> variant : variants.entrySet()) {
+            final File dir = new File(reportDir, variant.getKey());
+            final File result = BASELINE.equals(variant.getKey()) ? baselineResult : new File(dir, "output.jar");
+            try {
+                if (!dir.exists() && !dir.mkdirs()) {
+                    throw new IOException("Failed to create directory: " + dir.getAbsolutePath());
+                }
+                prepared.put(variant.getKey(), runs.prepare(variant.getValue(), dir, result));
+            } catch (IOException e) {
+                throw new GradleException("Failed to write config file: " + e.getMessage(), e);
+            }
+        }
+
+        if (warmUp) {
+            logger.lifecycle("Running the baseline alone first to create the class data sharing archive...");
+            try (SkidfuscatorOutput runOutput = output.forRun(BASELINE, new File(reportDir, BASELINE + "/warm-up.log"))) {
+                prepared.get(BASELINE).run(runOutput);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new GradleException("The baseline Skidfuscator run failed: " + e.getMessage(), e);
+            }
+        }
+
+        logger.lifecycle("Measuring " + (variants.size() - 1) + " transformers in " + variants.size() + " Skidfuscator runs...");
+        final Map<String, Future<CostRun>> futures = new LinkedHashMap<>();
+        final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, prepared.size())));
+        try {
+            for (Map.Entry<String, Run> run : prepared.entrySet()) {
+                final File dir = new File(reportDir, run.getKey());
+                final File result = BASELINE.equals(run.getKey()) ? baselineResult : new File(dir, "output.jar");
+                futures.put(run.getKey(), pool.submit(() -> {
+                    final long millis;
+                    try (SkidfuscatorOutput runOutput = output.forRun(run.getKey(), new File(dir, "skidfuscator.log"))) {
+                        millis = run.getValue().run(runOutput);
+                    }
+                    return new CostRun(millis, JarComposition.read(result));
+                }));
+            }
+
+            final Map<String, CostRun> results = new LinkedHashMap<>();
+            for (Map.Entry<String, Future<CostRun>> future : futures.entrySet()) {
+                try {
+                    results.put(future.getKey(), future.getValue().get());
+                } catch (ExecutionException e) {
+                    if (BASELINE.equals(future.getKey())) {
+                        throw new GradleException("The baseline Skidfuscator run failed: " + e.getCause().getMessage(), e.getCause());
+                    }
+                    logger.warn("Skidfuscator failed without " + future.getKey() + ": " + e.getCause().getMessage());
+                }
+            }
+            write(results);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GradleException("Interrupted while measuring transformer costs", e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * The transformer settings of every run by name, the baseline first.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Map<String, Object>> variants(Map<String, Object> transformers) {
+        final Map<String, Map<String, Object>> variants = new LinkedHashMap<>();
+        variants.put(BASELINE, transformers);
+        final List<String> names = new ArrayList<>(transformers.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            final Object transformer = transformers.get(name);
+            if (!(transformer instanceof Map) || Boolean.FALSE.equals(((Map<String, Object>) transformer).get("enabled"))) {
+                continue;
+            }
+            final Map<String, Object> disabled = new HashMap<>((Map<String, Object>) transformer);
+            disabled.put("enabled", false);
+            final Map<String, Object> without = new HashMap<>(transformers);
+            without.put(name, disabled);
+            variants.put(name, without);
+        }
+        return variants;
+    }
+
+    private void write(Map<String, CostRun> results) {
+        final CostRun baseline = results.get(BASELINE);
+        final List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "%-28s %10s %14s %14s %10s %12s",
+                "Transformer", "Time", "Jar bytes", "Class bytes", "Methods", "Constants"));
+        lines.add(String.format(Locale.ROOT, "%-28s %9.1fs %,14d %,14d %,10d %,12d", "(all enabled)",
+                baseline.millis / 1000.0, baseline.composition.getJarBytes(), baseline.composition.totalClassBytes(),
+                baseline.composition.totalMethods(), baseline.composition.totalConstants()));
+
+        // A transformer costs what the baseline has more than the run without it
+        final List<String> csv = new ArrayList<>();
+        final StringBuilder header = new StringBuilder("class,baseline bytes");
+        final List<String> measured = new ArrayList<>();
+        for (Map.Entry<String, CostRun> result : results.entrySet()) {
+            if (BASELINE.equals(result.getKey())) {
+                continue;
+            }
+            final JarComposition without = result.getValue().composition;
+            lines.add(String.format(Locale.ROOT, "%-28s %+9.1fs %+,14d %+,14d %+,10d %+,12d", result.getKey(),
+                    (baseline.millis - result.getValue().millis) / 1000.0,
+                    baseline.composition.getJarBytes() - without.getJarBytes(),
+                    baseline.composition.totalClassBytes() - without.totalClassBytes(),
+                    baseline.composition.totalMethods() - without.totalMethods(),
+                    baseline.composition.totalConstants() - without.totalConstants()));
+            header.append(',').append(result.getKey()).append(" bytes");
+            measured.add(result.getKey());
+        }
+        csv.add(header.toString());
+        for (Map.Entry<String, JarComposition.ClassStats> cls : baseline.composition.getClasses().entrySet()) {
+            final StringBuilder row = new StringBuilder(cls.getKey()).append(',').append(cls.getValue().bytes);
+            for (String name : measured) {
+                final JarComposition.ClassStats without = results.get(name).composition.getClasses().get(cls.getKey());
+                row.append(',').append(without == null ? "" : Integer.toString(cls.getValue().bytes - without.bytes));
+            }
+            csv.add(row.toString());
+        }
+
+        final File reportFile = new File(reportDir, "cost-report.txt");
+        try {
+            Files.write(reportFile.toPath(), lines, StandardCharsets.UTF_8);
+            Files.write(new File(reportDir, "class-costs.csv").toPath(), csv, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("Failed to write the cost report: " + e.getMessage());
+        }
+        for (String line : lines) {
+            logger.lifecycle(line);
+        }
+        logger.lifecycle("Per class size costs in " + new File(reportDir, "class-costs.csv").getAbsolutePath());
+    }
+
+    private static final class CostRun {
+        private final long millis;
+        private final JarComposition composition;
+
+        private CostRun(long millis, JarComposition composition) {
+            this.millis = millis;
+            this.composition = composition;
+        }
+    }
+}
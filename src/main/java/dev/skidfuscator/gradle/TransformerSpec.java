@@ -1,61 +1,76 @@
 package dev.skidfuscator.gradle;
 
+import org.gradle.api.Named;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.Input;
 
+import javax.inject.Inject;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Represents a single transformer configuration block.
- * Users can set arbitrary properties on this transformer.
+ * The common settings are typed properties, any other setting can be added through
+ * {@link #setProperty(String, Object)} or {@link #getProperties()}.
  */
-public class TransformerSpec {
+public abstract class TransformerSpec implements Named {
     private final String name;
-    private final Map<String, Object> properties = new HashMap<>();
 
+    @Inject
     public TransformerSpec(String name) {
         this.name = name;
     }
 
     /**
-     * Called by Gradle DSL when setting a property.
-     * This relies on Groovy's dynamic behavior if using Groovy DSL:
+     * Configured through the Gradle DSL:
      * transformers {
      *   interprocedural {
      *     enabled = true
      *     exempt = ["com/example/Class"]
+     *     setProperty("custom", 3)
      *   }
      * }
-     *
-     * If using Kotlin DSL, users might need map-style configuration.
      */
     public void setProperty(String propertyName, Object value) {
-        properties.put(propertyName, value);
+        getProperties().put(propertyName, value);
     }
 
-    // For Gradle input annotations, if needed
+    /**
+     * Settings without a typed property of their own.
+     */
     @Input
-    public Map<String, Object> getProperties() {
-        return properties;
-    }
+    public abstract MapProperty<String, Object> getProperties();
 
-    public String getName() {
-        return name;
-    }
+    @Input
+    public abstract Property<Boolean> getEnabled();
 
-    public boolean isEnabled() {
-        return properties.getOrDefault("enabled", false).equals(true);
-    }
+    @Input
+    public abstract Property<String> getType();
 
-    public void setEnabled(boolean enabled) {
-        properties.put("enabled", enabled);
-    }
+    @Input
+    public abstract ListProperty<String> getExempt();
 
-    public String getType() {
-        return (String) properties.get("type");
+    @Override
+    public String getName() {
+        return name;
     }
 
-    public void setType(String type) {
-        properties.put("type", type);
+    /**
+     * Flattens this transformer into the map rendered into the Skidfuscator config.
+     */
+    Map<String, Object> toConfig() {
+        Map<String, Object> config = new HashMap<>(getProperties().getOrElse(new HashMap<>()));
+        if (getEnabled().isPresent()) {
+            config.put("enabled", getEnabled().get());
+        }
+        if (getType().isPresent()) {
+            config.put("type", getType().get());
+        }
+        if (getExempt().isPresent() && !getExempt().get().isEmpty()) {
+            config.put("exempt", getExempt().get());
+        }
+        return config;
     }
 }
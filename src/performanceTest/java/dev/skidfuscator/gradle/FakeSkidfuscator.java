@@ -0,0 +1,33 @@
+package dev.skidfuscator.gradle;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stands in for the Skidfuscator CLI so the plugin can be measured offline: copies the input jar,
+ * the last argument, to the path given with {@code -o}.
+ *
+ * Packaged on its own as the Skidfuscator jar, so it must not use any other class.
+ */
+public final class FakeSkidfuscator {
+
+    private FakeSkidfuscator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String output = null;
+        for (int i = 0; i < args.length - 1; i++) {
+            if ("-o".equals(args[i])) {
+                output = args[i + 1];
+            }
+        }
+        if (output == null || args.length == 0) {
+            System.err.println("Usage: obfuscate -o <output> <input>");
+            System.exit(1);
+        }
+        Files.copy(Paths.get(args[args.length - 1]), Paths.get(output), StandardCopyOption.REPLACE_EXISTING);
+        System.out.println("Obfuscated " + args[args.length - 1]);
+    }
+}
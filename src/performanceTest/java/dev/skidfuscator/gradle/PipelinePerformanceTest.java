@@ -0,0 +1,145 @@
+package dev.skidfuscator.gradle;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs {@code runSkidfuscator} through TestKit on a project with a synthetic input jar and classpath,
+ * once cold and once warm, and reports the time of each phase.
+ *
+ * Skidfuscator itself is replaced by {@link FakeSkidfuscator}, seeded into the distribution cache,
+ * so the test runs offline and measures the plugin rather than the obfuscator. The size of the
+ * project is set with the {@code skidfuscator.perf.classes}, {@code skidfuscator.perf.libraries} and
+ * {@code skidfuscator.perf.classesPerLibrary} system properties.
+ */
+class PipelinePerformanceTest {
+
+    private static final String VERSION = "0.0.0-perf";
+
+    @TempDir
+    File dir;
+
+    @Test
+    void coldAndWarmRuns() throws IOException {
+        final int classes = Integer.getInteger("skidfuscator.perf.classes", 2000);
+        final int libraries = Integer.getInteger("skidfuscator.perf.libraries", 100);
+        final int classesPerLibrary = Integer.getInteger("skidfuscator.perf.classesPerLibrary", 50);
+
+        final File projectDir = new File(dir, "project");
+        final SyntheticJars jars = SyntheticJars.generate(new File(projectDir, "synthetic"), classes, libraries, classesPerLibrary);
+        final File testKitDir = new File(dir, "testkit");
+        final String checksum = seedDistribution(new File(testKitDir, "caches/skidfuscator/" + VERSION));
+        writeProject(projectDir, jars, checksum);
+
+        final Config cold = run(projectDir, testKitDir, "runSkidfuscator", "--offline");
+        assertEquals("obfuscated", cold.getString("outcome"));
+        assertTrue(new File(projectDir, "build/obfuscated.jar").isFile());
+        assertEquals(libraries, cold.getInt("counters.librariesBeforeReduction"));
+        assertEquals((libraries + 1) / 2, cold.getInt("counters.librariesAfterReduction"));
+
+        final Config warm = run(projectDir, testKitDir, "runSkidfuscator", "--offline", "--rerun");
+        assertEquals("reused", warm.getString("outcome"));
+        assertEquals(libraries, warm.getInt("counters.dependenciesReused"));
+        assertTrue(warm.getLong("totalMillis") < cold.getLong("totalMillis"),
+                "a warm run should be faster than a cold one: " + warm.getLong("totalMillis") + " ms vs "
+                        + cold.getLong("totalMillis") + " ms");
+
+        System.out.println(String.format(Locale.ROOT, "%d classes, %d libraries of %d classes", classes, libraries, classesPerLibrary));
+        System.out.println(describe("cold", cold));
+        System.out.println(describe("warm", warm));
+    }
+
+    private static Config run(File projectDir, File testKitDir, String... arguments) {
+        GradleRunner.create()
+                .withProjectDir(projectDir)
+                .withTestKitDir(testKitDir)
+                .withPluginClasspath()
+                .withArguments(arguments)
+                .build();
+        return ConfigFactory.parseFile(new File(projectDir, "build/skidfuscator/report.json"));
+    }
+
+    private static String describe(String name, Config report) {
+        final StringBuilder line = new StringBuilder(name).append(": ").append(report.getLong("totalMillis")).append(" ms");
+        for (String phase : report.getConfig("phases").root().keySet()) {
+            line.append(", ").append(phase).append(' ').append(report.getLong("phases." + phase)).append(" ms");
+        }
+        return line.toString();
+    }
+
+    /**
+     * Puts a jar of {@link FakeSkidfuscator} where the plugin caches downloaded releases.
+     *
+     * @return its checksum
+     */
+    private static String seedDistribution(File versionDir) throws IOException {
+        versionDir.mkdirs();
+        final File jar = new File(versionDir, "skidfuscator.jar");
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, FakeSkidfuscator.class.getName());
+        final String entry = FakeSkidfuscator.class.getName().replace('.', '/') + ".class";
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest);
+             InputStream in = FakeSkidfuscator.class.getClassLoader().getResourceAsStream(entry)) {
+            out.putNextEntry(new ZipEntry(entry));
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            out.closeEntry();
+        }
+        final String checksum = FileHashes.sha256(jar);
+        Files.write(new File(versionDir, "skidfuscator.jar.sha256").toPath(), checksum.getBytes(StandardCharsets.UTF_8));
+        return checksum;
+    }
+
+    private static void writeProject(File projectDir, SyntheticJars jars, String checksum) throws IOException {
+        final List<String> libraries = new ArrayList<>();
+        for (File library : jars.getLibraries()) {
+            libraries.add("'" + path(library) + "'");
+        }
+        Files.write(new File(projectDir, "settings.gradle").toPath(),
+                "rootProject.name = 'skidfuscator-performance'\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(projectDir, "build.gradle").toPath(), (""
+                + "plugins {\n"
+                + "    id 'java'\n"
+                + "    id 'dev.skidfuscator'\n"
+                + "}\n"
+                + "\n"
+                + "dependencies {\n"
+                + "    implementation files(" + String.join(", ", libraries) + ")\n"
+                + "}\n"
+                + "\n"
+                + "skidfuscator {\n"
+                + "    input.set('" + path(jars.getInput()) + "')\n"
+                + "    output.set(layout.buildDirectory.file('obfuscated.jar').get().asFile.absolutePath)\n"
+                + "    skidfuscatorVersion.set('" + VERSION + "')\n"
+                + "    skidfuscatorChecksum.set('" + checksum + "')\n"
+                + "}\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String path(File file) {
+        return file.getAbsolutePath().replace('\\', '/');
+    }
+}
@@ -0,0 +1,64 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.logging.Logging;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CachingDependencyAnalyzerTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void parallelIndexingMatchesSequentialIndexing() throws IOException {
+        final TestJar inputJar = new TestJar();
+        final List<File> libraries = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            // Every library extends the previous one, and classes named dup/Shared shadow each other
+            final TestJar library = new TestJar()
+                    .addClass("lib" + i + "/Type", i == 0 ? "java/lang/Object" : "lib" + (i - 1) + "/Type", "lib" + i + "/Api")
+                    .addInterface("lib" + i + "/Api")
+                    .addClass("dup/Shared", "java/lang/Object");
+            libraries.add(library.write(new File(dir, "libs/lib" + i + ".jar")));
+            if (i % 3 == 0) {
+                inputJar.addClass("app/Uses" + i, "lib" + i + "/Type");
+            }
+        }
+        inputJar.addClass("app/Dup", "dup/Shared");
+        final File input = inputJar.write(new File(dir, "input.jar"));
+
+        final Map<String, HierarchyIndex> shared = new ConcurrentHashMap<>();
+        final String sequential = describe(analyze("sequential", 1, shared, input, libraries));
+        assertEquals(sequential, describe(analyze("parallel", 8, new ConcurrentHashMap<>(), input, libraries)));
+        assertEquals(sequential, describe(analyze("parallel", 8, new ConcurrentHashMap<>(), input, libraries)),
+                "cached result differs");
+        assertEquals(sequential, describe(analyze("shared", 4, shared, input, libraries)),
+                "result from indexes shared by another project differs");
+    }
+
+    private DependencyAnalysis analyze(String cache, int parallelism, Map<String, HierarchyIndex> sharedIndexes,
+                                       File input, List<File> libraries) throws IOException {
+        return new CachingDependencyAnalyzer(new File(dir, cache), parallelism, sharedIndexes,
+                Logging.getLogger(CachingDependencyAnalyzerTest.class)).analyze(input, JarFingerprint.of(input), libraries);
+    }
+
+    private static String describe(DependencyAnalysis analysis) {
+        final StringBuilder sb = new StringBuilder();
+        for (DependencyAnalysis.JarDependency jar : analysis.getJarDependencies()) {
+            sb.append(jar.getJarPath().getFileName()).append('\n');
+            for (DependencyAnalysis.ClassDependency type : jar.getClassesNeeded()) {
+                sb.append("  ").append(type.getClassName()).append(' ').append(type.getReasons()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package dev.skidfuscator.gradle;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeapSizingTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @TempDir
+    File dir;
+
+    @Test
+    void samplesTheLiveHeapOverThePeak() {
+        assertEquals(200 * MB, HeapSizing.sample(stats(900 * MB, 1024 * MB, 200 * MB)));
+    }
+
+    @Test
+    void samplesThePeakOnlyWhenItStayedClearOfTheMaximumHeap() {
+        assertEquals(300 * MB, HeapSizing.sample(stats(300 * MB, 1024 * MB, null)));
+        assertNull(HeapSizing.sample(stats(1000 * MB, 1024 * MB, null)));
+        assertNull(HeapSizing.sample(new Properties()));
+    }
+
+    /**
+     * Runs filling whatever heap they get, with the same live set, must not raise the prediction run after run.
+     */
+    @Test
+    void predictionDoesNotGrowWithTheHeapGiven() throws Exception {
+        final HeapSizing sizing = new HeapSizing(new File(dir, "heap-history.txt"));
+        sizing.record(10 * MB, 200 * MB);
+        long heap = sizing.predict(10 * MB);
+        for (int i = 0; i < 5; i++) {
+            final Long sample = HeapSizing.sample(stats(heap - MB, heap, 200 * MB));
+            assertNotNull(sample);
+            sizing.record(10 * MB, sample);
+            assertEquals(heap, (long) sizing.predict(10 * MB));
+            heap = sizing.predict(10 * MB);
+        }
+    }
+
+    /**
+     * Builds of other projects or daemons record into the same file from their own JVMs.
+     */
+    @Test
+    void recordsFromSeveralJvmsAreAllKept() throws Exception {
+        final File history = new File(dir, "heap-history.txt");
+        final String java = new File(System.getProperty("java.home"), "bin/java").getAbsolutePath();
+        final List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    HeapSizingTest.class.getName(), history.getAbsolutePath(), Integer.toString(i))
+                    .inheritIO().start());
+        }
+        for (Process process : processes) {
+            assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+            assertEquals(0, process.exitValue());
+        }
+        assertEquals(40, Files.readAllLines(history.toPath(), StandardCharsets.UTF_8).size());
+    }
+
+    /**
+     * Records ten runs into the history file given, for {@link #recordsFromSeveralJvmsAreAllKept()}.
+     */
+    public static void main(String[] args) throws Exception {
+        final HeapSizing sizing = new HeapSizing(new File(args[0]));
+        for (int i = 0; i < 10; i++) {
+            sizing.record(Long.parseLong(args[1]) * MB, (100 + i) * MB);
+        }
+    }
+
+    private static Properties stats(long peak, long max, Long live) {
+        final Properties stats = new Properties();
+        stats.setProperty("peakHeapBytes", Long.toString(peak));
+        stats.setProperty("maxHeapBytes", Long.toString(max));
+        if (live != null) {
+            stats.setProperty("liveHeapBytes", Long.toString(live));
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,237 @@
+package dev.skidfuscator.gradle;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InputShardingTest {
+
+    private static final int EXPECTED = 12 + 9 + 4 + 5;
+
+    @TempDir
+    File dir;
+
+    /**
+     * Obfuscates a small program whole and in shards with a stand-in obfuscator, which encrypts
+     * constants with a key held in a helper class it adds. Every shard adds that helper under the
+     * same name but with its own key, so the merged shards only behave like the jar obfuscated
+     * whole when the helpers are kept apart.
+     */
+    @Test
+    void shardedOutputBehavesLikeUnshardedOutput() throws Exception {
+        final File input = program().write(new File(dir, "input.jar"));
+        assertEquals(EXPECTED, run(input));
+
+        final File whole = obfuscate(input, new File(dir, "whole-obf.jar"), 0x5A5A);
+        assertEquals(EXPECTED, run(whole));
+
+        final InputSharding sharding = InputSharding.plan(input, 3);
+        assertNotNull(sharding);
+        assertEquals(3, sharding.getShards());
+        final List<File> shardJars = sharding.write(new File(dir, "shards"));
+        final List<File> outputs = new ArrayList<>();
+        for (int i = 0; i < shardJars.size(); i++) {
+            outputs.add(obfuscate(shardJars.get(i), new File(dir, "shards/shard-" + i + "-obf.jar"), 0x1000 + 7 * i));
+        }
+
+        final File merged = new File(dir, "merged.jar");
+        assertEquals(shardJars.size() - 1, sharding.merge(outputs, merged));
+        assertEquals(EXPECTED, run(merged));
+
+        final Set<String> classes = entries(merged);
+        assertTrue(classes.containsAll(entries(input)), "every input entry is kept");
+        assertTrue(classes.contains("skid/Key.class"));
+        assertTrue(classes.contains("skid/Marker.class"), "identical added classes are kept once");
+        assertFalse(classes.stream().anyMatch(name -> name.startsWith("skid/Marker$")));
+    }
+
+    @Test
+    void crossClassTransformersBlockShardingUnlessDisabled() {
+        final Map<String, Object> transformers = new HashMap<>();
+        assertEquals(InputSharding.CROSS_CLASS_TRANSFORMERS, InputSharding.crossClassTransformers(transformers));
+
+        for (String name : InputSharding.CROSS_CLASS_TRANSFORMERS) {
+            transformers.put(name, Collections.singletonMap("enabled", false));
+        }
+        transformers.put("stringEncryption", Collections.singletonMap("enabled", true));
+        assertEquals(Collections.emptyList(), InputSharding.crossClassTransformers(transformers));
+
+        transformers.put("interprocedural", Collections.singletonMap("enabled", true));
+        assertEquals(Collections.singletonList("interprocedural"), InputSharding.crossClassTransformers(transformers));
+    }
+
+    /**
+     * Four independent groups of packages: shapes, polygons, labels and the main class using them all.
+     */
+    private static TestJar program() {
+        final TestJar jar = new TestJar()
+                .addEntry("api/Shape.class", type(Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT,
+                        "api/Shape", "java/lang/Object", new String[0], null, null))
+                .addEntry("geo/Circle.class", type(Opcodes.ACC_PUBLIC, "geo/Circle", "java/lang/Object",
+                        new String[]{"api/Shape"}, "area", 12))
+                .addEntry("base/Polygon.class", type(Opcodes.ACC_PUBLIC, "base/Polygon", "java/lang/Object",
+                        new String[0], "sides", 4))
+                .addEntry("box/Square.class", type(Opcodes.ACC_PUBLIC, "box/Square", "base/Polygon",
+                        new String[0], "area", 9))
+                .addEntry("text/Label.class", type(Opcodes.ACC_PUBLIC, "text/Label", "java/lang/Object",
+                        new String[0], null, 5))
+                .addEntry("META-INF/notes.txt", "resource".getBytes());
+
+        final ClassWriter main = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        main.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "app/Main", null, "java/lang/Object", null);
+        final MethodVisitor run = main.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "run", "()I", null, null);
+        run.visitCode();
+        newInstance(run, "geo/Circle");
+        run.visitMethodInsn(Opcodes.INVOKEINTERFACE, "api/Shape", "area", "()I", true);
+        newInstance(run, "box/Square");
+        run.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "box/Square", "area", "()I", false);
+        run.visitInsn(Opcodes.IADD);
+        newInstance(run, "box/Square");
+        run.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "base/Polygon", "sides", "()I", false);
+        run.visitInsn(Opcodes.IADD);
+        run.visitMethodInsn(Opcodes.INVOKESTATIC, "text/Label", "length", "()I", false);
+        run.visitInsn(Opcodes.IADD);
+        run.visitInsn(Opcodes.IRETURN);
+        run.visitMaxs(0, 0);
+        run.visitEnd();
+        main.visitEnd();
+        return jar.addEntry("app/Main.class", main.toByteArray());
+    }
+
+    /**
+     * A class with a constructor and an instance method returning a constant, or a static
+     * {@code length()} method when no method name is given. Interfaces get an abstract {@code area()}.
+     */
+    private static byte[] type(int access, String name, String superName, String[] interfaces, String method, Integer value) {
+        final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        final boolean isInterface = (access & Opcodes.ACC_INTERFACE) != 0;
+        writer.visit(Opcodes.V1_8, access | (isInterface ? 0 : Opcodes.ACC_SUPER), name, null, superName,
+                interfaces.length == 0 ? null : interfaces);
+        if (isInterface) {
+            writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "area", "()I", null, null).visitEnd();
+            writer.visitEnd();
+            return writer.toByteArray();
+        }
+
+        final MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        final MethodVisitor constant = method == null
+                ? writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "length", "()I", null, null)
+                : writer.visitMethod(Opcodes.ACC_PUBLIC, method, "()I", null, null);
+        constant.visitCode();
+        constant.visitLdcInsn(value);
+        constant.visitInsn(Opcodes.IRETURN);
+        constant.visitMaxs(0, 0);
+        constant.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void newInstance(MethodVisitor method, String type) {
+        method.visitTypeInsn(Opcodes.NEW, type);
+        method.visitInsn(Opcodes.DUP);
+        method.visitMethodInsn(Opcodes.INVOKESPECIAL, type, "<init>", "()V", false);
+    }
+
+    /**
+     * Replaces every int constant {@code c} by {@code (c ^ key) ^ skid.Key.k()} and adds {@code skid/Key}
+     * returning the key, plus a {@code skid/Marker} class that is the same for every key.
+     */
+    private static File obfuscate(File input, File output, int key) throws IOException {
+        final TestJar jar = new TestJar();
+        try (JarFile jarFile = new JarFile(input)) {
+            final Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+                final byte[] bytes;
+                try (InputStream in = jarFile.getInputStream(entry)) {
+                    bytes = readAll(in);
+                }
+                jar.addEntry(entry.getName(), entry.getName().endsWith(".class") ? encrypt(bytes, key) : bytes);
+            }
+        }
+
+        final ClassWriter keyClass = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        keyClass.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "skid/Key", null, "java/lang/Object", null);
+        final MethodVisitor k = keyClass.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "k", "()I", null, null);
+        k.visitCode();
+        k.visitLdcInsn(key);
+        k.visitInsn(Opcodes.IRETURN);
+        k.visitMaxs(0, 0);
+        k.visitEnd();
+        keyClass.visitEnd();
+        jar.addEntry("skid/Key.class", keyClass.toByteArray());
+        jar.addClass("skid/Marker", "java/lang/Object");
+        return jar.write(output);
+    }
+
+    private static byte[] encrypt(byte[] bytes, int key) {
+        final ClassReader reader = new ClassReader(bytes);
+        final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        reader.accept(new ClassVisitor(Opcodes.ASM9, writer) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                return new MethodVisitor(Opcodes.ASM9, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+                    @Override
+                    public void visitLdcInsn(Object value) {
+                        if (!(value instanceof Integer)) {
+                            super.visitLdcInsn(value);
+                            return;
+                        }
+                        super.visitLdcInsn((Integer) value ^ key);
+                        super.visitMethodInsn(Opcodes.INVOKESTATIC, "skid/Key", "k", "()I", false);
+                        super.visitInsn(Opcodes.IXOR);
+                    }
+                };
+            }
+        }, 0);
+        return writer.toByteArray();
+    }
+
+    private static int run(File jar) throws Exception {
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL()},
+                ClassLoader.getSystemClassLoader().getParent())) {
+            return (Integer) loader.loadClass("app.Main").getMethod("run").invoke(null);
+        }
+    }
+
+    private static Set<String> entries(File jar) throws IOException {
+        final Set<String> names = new HashSet<>();
+        try (JarFile jarFile = new JarFile(jar)) {
+            jarFile.stream().forEach(entry -> names.add(entry.getName()));
+        }
+        return names;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,49 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.GradleException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PreparationStagesTest {
+
+    /**
+     * A failing stage fails a wait on an unrelated stage, which is then interrupted instead of running on.
+     */
+    @Test
+    void failingStageCancelsTheOthers() throws InterruptedException {
+        final CountDownLatch slowStarted = new CountDownLatch(1);
+        final CountDownLatch slowInterrupted = new CountDownLatch(1);
+        final CompletableFuture<String> slow;
+        final CompletableFuture<String> dependent;
+
+        try (PreparationStages stages = new PreparationStages(2)) {
+            slow = stages.start(() -> {
+                slowStarted.countDown();
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException e) {
+                    slowInterrupted.countDown();
+                    throw e;
+                }
+                return "slow";
+            });
+            assertTrue(slowStarted.await(10, TimeUnit.SECONDS));
+            final CompletableFuture<String> failing = stages.start(() -> {
+                throw new GradleException("Download failed");
+            });
+            dependent = stages.both(slow, failing, (a, b) -> a + b);
+
+            final GradleException error = assertThrows(GradleException.class, () -> stages.await(slow));
+            assertEquals("Download failed", error.getMessage());
+        }
+
+        assertTrue(slowInterrupted.await(10, TimeUnit.SECONDS));
+        assertTrue(slow.isDone());
+        assertTrue(dependent.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,29 @@
+package dev.skidfuscator.gradle;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SkidfuscatorBenchmarkTaskTest {
+
+    @Test
+    void overlappingConfidenceIntervalsAreNoRegression() {
+        // 20% less throughput, but within the error of both runs
+        assertTrue(SkidfuscatorBenchmarkTask.significantRegression(100, 15, 80, 10, true) <= 0);
+        // 20% longer average time, same
+        assertTrue(SkidfuscatorBenchmarkTask.significantRegression(100, 15, 120, 10, false) <= 0);
+    }
+
+    @Test
+    void regressionIsWhatRemainsBeyondTheErrors() {
+        assertEquals(20, SkidfuscatorBenchmarkTask.significantRegression(100, 5, 70, 5, true), 1e-9);
+        assertEquals(20, SkidfuscatorBenchmarkTask.significantRegression(100, 5, 130, 5, false), 1e-9);
+        assertEquals(30, SkidfuscatorBenchmarkTask.significantRegression(100, 0, 130, 0, false), 1e-9);
+    }
+
+    @Test
+    void improvementsAreNegative() {
+        assertTrue(SkidfuscatorBenchmarkTask.significantRegression(100, 1, 150, 1, true) < 0);
+        assertTrue(SkidfuscatorBenchmarkTask.significantRegression(100, 1, 50, 1, false) < 0);
+    }
+}
@@ -0,0 +1,30 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.GradleException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SkidfuscatorBuildServiceTest {
+
+    @Test
+    void parsesSizes() {
+        assertEquals(512 * 1024, SkidfuscatorBuildService.parseSize("setting", "512k"));
+        assertEquals(64L * 1024 * 1024, SkidfuscatorBuildService.parseSize("setting", " 64M "));
+        assertEquals(4L * 1024 * 1024 * 1024, SkidfuscatorBuildService.parseSize("setting", "4g"));
+        assertEquals(1000, SkidfuscatorBuildService.parseSize("setting", "1000"));
+    }
+
+    @Test
+    void badSettingsNameTheProperty() {
+        final GradleException size = assertThrows(GradleException.class,
+                () -> SkidfuscatorBuildService.parseSize("skidfuscator.bytesPerObfuscationSlot", "64mb"));
+        assertTrue(size.getMessage().contains("skidfuscator.bytesPerObfuscationSlot"), size.getMessage());
+        assertThrows(GradleException.class, () -> SkidfuscatorBuildService.parseSize("setting", "0m"));
+
+        final GradleException count = assertThrows(GradleException.class,
+                () -> SkidfuscatorBuildService.parseCount("skidfuscator.maxParallelObfuscations", "two"));
+        assertTrue(count.getMessage().contains("skidfuscator.maxParallelObfuscations"), count.getMessage());
+        assertThrows(GradleException.class, () -> SkidfuscatorBuildService.parseCount("setting", "0"));
+    }
+}
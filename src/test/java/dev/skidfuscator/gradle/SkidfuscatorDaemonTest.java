@@ -0,0 +1,91 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.logging.Logging;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SkidfuscatorDaemonTest {
+
+    @TempDir
+    File dir;
+
+    /**
+     * The stand-in counts its runs in a static field, which must start over for every request.
+     */
+    @Test
+    void requestsDoNotShareStaticState() throws IOException {
+        final String java = new File(System.getProperty("java.home"), "bin/java").getAbsolutePath();
+        assumeTrue(JavaInstallation.featureVersion(JavaInstallation.home(java)) < 24, "The daemon needs a JVM that can trap System.exit");
+
+        final SkidfuscatorDaemonClient client = new SkidfuscatorDaemonClient(new File(dir, "daemons"), fakeSkidfuscator(),
+                java, Collections.emptyList(), 1, Logging.getLogger(SkidfuscatorDaemonTest.class));
+        for (int i = 0; i < 2; i++) {
+            final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+            assertEquals(0, client.run(Collections.emptyList(), stdout, new ByteArrayOutputStream()));
+            assertEquals("1", new String(stdout.toByteArray(), StandardCharsets.UTF_8).trim());
+        }
+
+        final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        assertEquals(3, client.run(Collections.singletonList("exit"), stdout, new ByteArrayOutputStream()));
+        assertEquals("1", new String(stdout.toByteArray(), StandardCharsets.UTF_8).trim());
+    }
+
+    /**
+     * A main class printing how often it ran in this classloader, and exiting with 3 when given an argument.
+     */
+    private File fakeSkidfuscator() throws IOException {
+        final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "fake/Main", null, "java/lang/Object", null);
+        writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, "runs", "I", null, null).visitEnd();
+        final MethodVisitor main = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "main", "([Ljava/lang/String;)V", null, null);
+        main.visitCode();
+        main.visitFieldInsn(Opcodes.GETSTATIC, "fake/Main", "runs", "I");
+        main.visitInsn(Opcodes.ICONST_1);
+        main.visitInsn(Opcodes.IADD);
+        main.visitInsn(Opcodes.DUP);
+        main.visitFieldInsn(Opcodes.PUTSTATIC, "fake/Main", "runs", "I");
+        main.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+        main.visitInsn(Opcodes.SWAP);
+        main.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(I)V", false);
+        final Label done = new Label();
+        main.visitVarInsn(Opcodes.ALOAD, 0);
+        main.visitInsn(Opcodes.ARRAYLENGTH);
+        main.visitJumpInsn(Opcodes.IFEQ, done);
+        main.visitInsn(Opcodes.ICONST_3);
+        main.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/System", "exit", "(I)V", false);
+        main.visitLabel(done);
+        main.visitInsn(Opcodes.RETURN);
+        main.visitMaxs(0, 0);
+        main.visitEnd();
+        writer.visitEnd();
+
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "fake.Main");
+        final File jar = new File(dir, "skidfuscator.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+            out.putNextEntry(new JarEntry("fake/Main.class"));
+            out.write(writer.toByteArray());
+            out.closeEntry();
+        }
+        return jar;
+    }
+}
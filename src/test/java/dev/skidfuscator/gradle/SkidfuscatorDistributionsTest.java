@@ -0,0 +1,203 @@
+package dev.skidfuscator.gradle;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.gradle.api.logging.Logging;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the distribution cache against a local stand-in for the GitHub release API and downloads.
+ */
+class SkidfuscatorDistributionsTest {
+
+    private static final String VERSION = "2.0.11";
+
+    @TempDir
+    File cacheDir;
+
+    private final byte[] jar = new byte[256 * 1024];
+    private final AtomicInteger latestRequests = new AtomicInteger();
+    private final AtomicInteger downloads = new AtomicInteger();
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile String latestTag = "v" + VERSION;
+    private volatile boolean stall;
+    private HttpServer server;
+    private String base;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        new Random(42).nextBytes(jar);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/api/latest", exchange -> {
+            latestRequests.incrementAndGet();
+            respond(exchange, 200, ("{\"tag_name\": \"" + latestTag + "\", \"name\": \"release\"}").getBytes(StandardCharsets.UTF_8));
+        });
+        // No published digest, every test passes the checksum it expects
+        server.createContext("/api/tags/", exchange -> respond(exchange, 404, new byte[0]));
+        server.createContext("/download/", this::serveJar);
+        server.start();
+        base = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    void latestVersionIsRememberedForItsTimeToLive() throws IOException {
+        final SkidfuscatorDistributions cached = distributions(TimeUnit.HOURS.toMillis(1), false, 1000);
+        assertEquals(VERSION, cached.resolveVersion("latest"));
+        latestTag = "v2.1.0";
+        assertEquals(VERSION, cached.resolveVersion("latest"));
+        assertEquals(1, latestRequests.get());
+
+        final SkidfuscatorDistributions expired = distributions(0, false, 1000);
+        assertEquals("2.1.0", expired.resolveVersion("latest"));
+        assertEquals(2, latestRequests.get());
+
+        assertEquals("1.0.0", expired.resolveVersion("1.0.0"));
+        assertEquals(2, latestRequests.get());
+    }
+
+    @Test
+    void checksumMismatchFailsWithoutCachingTheJar() {
+        final IOException error = assertThrows(IOException.class,
+                () -> distributions(0, false, 1000).resolveJar(VERSION, repeat('0', 64)));
+        assertTrue(error.getMessage().contains("Checksum mismatch"), error.getMessage());
+        assertFalse(new File(cacheDir, VERSION + "/skidfuscator.jar").exists());
+        assertFalse(new File(cacheDir, VERSION + "/skidfuscator.jar.part").exists());
+    }
+
+    @Test
+    void partialDownloadIsResumed() throws IOException {
+        final File versionDir = new File(cacheDir, VERSION);
+        assertTrue(versionDir.mkdirs());
+        Files.write(new File(versionDir, "skidfuscator.jar.part").toPath(), Arrays.copyOf(jar, 100_000));
+
+        final File resolved = distributions(0, false, 1000).resolveJar(VERSION, sha256(jar));
+        assertArrayEquals(jar, Files.readAllBytes(resolved.toPath()));
+        assertEquals(Arrays.asList("bytes=100000-"), ranges);
+    }
+
+    @Test
+    void offlineModeOnlyUsesTheCache() throws IOException {
+        final SkidfuscatorDistributions offline = distributions(0, true, 1000);
+        assertThrows(IOException.class, () -> offline.resolveVersion("latest"));
+        assertThrows(IOException.class, () -> offline.resolveJar(VERSION, sha256(jar)));
+        assertEquals(0, latestRequests.get());
+        assertEquals(0, downloads.get());
+
+        final SkidfuscatorDistributions online = distributions(0, false, 1000);
+        final File downloaded = online.resolveJar(online.resolveVersion("latest"), sha256(jar));
+
+        // An expired latest version is still used when offline
+        assertEquals(VERSION, offline.resolveVersion("latest"));
+        assertEquals(downloaded, offline.resolveJar(VERSION, sha256(jar)));
+        assertEquals(1, latestRequests.get());
+        assertEquals(1, downloads.get());
+    }
+
+    @Test
+    void stalledDownloadTimesOut() {
+        stall = true;
+        final long start = System.nanoTime();
+        assertThrows(SocketTimeoutException.class, () -> distributions(0, false, 200).resolveJar(VERSION, sha256(jar)));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+    }
+
+    @Test
+    void cachedJarIsOnlyHashedAgainWhenItsSizeOrTimeChanges() throws IOException {
+        final SkidfuscatorDistributions distributions = distributions(0, false, 1000);
+        final File cached = distributions.resolveJar(VERSION, sha256(jar));
+        final long lastModified = cached.lastModified();
+
+        // Same size and time, so the recorded checksum is trusted without reading the jar
+        final byte[] tampered = jar.clone();
+        tampered[0] ^= 1;
+        Files.write(cached.toPath(), tampered);
+        assertTrue(cached.setLastModified(lastModified));
+        assertEquals(cached, distributions.resolveJar(VERSION, sha256(jar)));
+        assertEquals(1, downloads.get());
+
+        // A new time makes it hash the jar, find the damage and download it again
+        assertTrue(cached.setLastModified(lastModified - 10_000));
+        assertEquals(cached, distributions.resolveJar(VERSION, sha256(jar)));
+        assertArrayEquals(jar, Files.readAllBytes(cached.toPath()));
+        assertEquals(2, downloads.get());
+    }
+
+    private SkidfuscatorDistributions distributions(long latestTtlMillis, boolean offline, int readTimeoutMillis) {
+        return new SkidfuscatorDistributions(cacheDir, base + "/api", base + "/download", latestTtlMillis, offline,
+                Logging.getLogger(SkidfuscatorDistributionsTest.class), 1000, readTimeoutMillis);
+    }
+
+    private void serveJar(HttpExchange exchange) throws IOException {
+        downloads.incrementAndGet();
+        if (stall) {
+            exchange.sendResponseHeaders(200, jar.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(jar, 0, 1024);
+                out.flush();
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException ignored) {
+                // The client gave up
+            }
+            return;
+        }
+
+        final String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range == null) {
+            respond(exchange, 200, jar);
+            return;
+        }
+        ranges.add(range);
+        final int from = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+        exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + (jar.length - 1) + "/" + jar.length);
+        respond(exchange, 206, Arrays.copyOfRange(jar, from, jar.length));
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String sha256(byte[] bytes) {
+        return FileHashes.hex(FileHashes.sha256().digest(bytes));
+    }
+
+    private static String repeat(char c, int count) {
+        final char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,93 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.logging.Logger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SkidfuscatorOutputTest {
+
+    @TempDir
+    File dir;
+
+    private final List<String> console = new CopyOnWriteArrayList<>();
+
+    @Test
+    void warningsOnTheConsoleAreCapped() throws IOException {
+        final File log = new File(dir, "skidfuscator.log");
+        try (SkidfuscatorOutput output = new SkidfuscatorOutput(log, logger(), SkidfuscatorLogLevel.SUMMARY)) {
+            final OutputStream stdout = output.stdout();
+            for (int i = 0; i < 1000; i++) {
+                stdout.write(("WARNING: method " + i + " is too large\n").getBytes(StandardCharsets.UTF_8));
+            }
+            assertEquals(1000, output.getWarnings());
+        }
+
+        final List<String> warnings = console.stream().filter(line -> line.startsWith("warn ")).collect(Collectors.toList());
+        assertEquals(101, warnings.size());
+        assertEquals("warn ... more warnings in " + log.getAbsolutePath(), warnings.get(100));
+        assertEquals(1000, Files.readAllLines(log.toPath()).size());
+    }
+
+    @Test
+    void errorsOnTheConsoleAreCapped() throws IOException {
+        final File log = new File(dir, "skidfuscator.log");
+        try (SkidfuscatorOutput output = new SkidfuscatorOutput(log, logger(), SkidfuscatorLogLevel.SUMMARY)) {
+            final OutputStream stderr = output.stderr();
+            for (int i = 0; i < 500; i++) {
+                stderr.write(("ERROR: class " + i + " failed\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(101, console.stream().filter(line -> line.startsWith("error ")).count());
+    }
+
+    @Test
+    void runsLogToTheirOwnFilesAndAddUpTheirCounts() throws IOException {
+        final File log = new File(dir, "skidfuscator.log");
+        try (SkidfuscatorOutput output = new SkidfuscatorOutput(log, logger(), SkidfuscatorLogLevel.SUMMARY)) {
+            final File first = new File(dir, "shard-0.log");
+            final File second = new File(dir, "shard-1.log");
+            try (SkidfuscatorOutput shard0 = output.forRun("shard-0", first);
+                 SkidfuscatorOutput shard1 = output.forRun("shard-1", second)) {
+                shard0.stderr().write("Exception in thread \"main\"\n".getBytes(StandardCharsets.UTF_8));
+                // Not a frame of the other run's stack trace
+                shard1.stdout().write("    at some.Frame\nWARNING: slow\n".getBytes(StandardCharsets.UTF_8));
+            }
+            assertEquals(1, output.getErrors());
+            assertEquals(1, output.getWarnings());
+            assertEquals(1, Files.readAllLines(first.toPath()).size());
+            assertEquals(2, Files.readAllLines(second.toPath()).size());
+        }
+
+        assertTrue(console.contains("error [shard-0] Exception in thread \"main\""), console.toString());
+        assertTrue(console.contains("warn [shard-1] WARNING: slow"), console.toString());
+        assertFalse(console.contains("error [shard-1]     at some.Frame"), console.toString());
+        assertEquals(0, Files.readAllLines(log.toPath()).size());
+    }
+
+    /**
+     * A logger recording every message with the name of the level it was logged at.
+     */
+    private Logger logger() {
+        return (Logger) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Logger.class}, (proxy, method, args) -> {
+            if (method.getReturnType() == boolean.class) {
+                return false;
+            }
+            if (args != null && args.length > 0 && args[0] instanceof String) {
+                console.add(method.getName() + " " + args[0]);
+            }
+            return null;
+        });
+    }
+}
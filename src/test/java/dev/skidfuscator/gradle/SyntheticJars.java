@@ -0,0 +1,65 @@
+package dev.skidfuscator.gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates an input jar and a classpath of library jars of a given size, for tests and benchmarks.
+ *
+ * Every library declares a base class and an interface extending the previous library's, so
+ * supertypes chain across jars. Input classes extend the bases of the used libraries in turn,
+ * the other libraries are never referenced and should be dropped by the dependency analysis.
+ */
+final class SyntheticJars {
+
+    private final File input;
+    private final List<File> libraries;
+
+    private SyntheticJars(File input, List<File> libraries) {
+        this.input = input;
+        this.libraries = libraries;
+    }
+
+    /**
+     * @param classes          classes in the input jar
+     * @param libraries        library jars, half of which the input uses
+     * @param classesPerLibrary classes in every library jar
+     */
+    static SyntheticJars generate(File dir, int classes, int libraries, int classesPerLibrary) throws IOException {
+        final int used = Math.max(1, (libraries + 1) / 2);
+        final List<File> libraryJars = new ArrayList<>(libraries);
+        for (int i = 0; i < libraries; i++) {
+            final String pkg = "lib" + i + "/";
+            final TestJar jar = new TestJar();
+            if (i == 0 || i == used) {
+                jar.addInterface(pkg + "Api");
+                jar.addClass(pkg + "Base", "java/lang/Object", pkg + "Api");
+            } else {
+                final String previous = "lib" + (i - 1) + "/";
+                jar.addInterface(pkg + "Api", previous + "Api");
+                jar.addClass(pkg + "Base", previous + "Base", pkg + "Api");
+            }
+            for (int j = 0; j < classesPerLibrary; j++) {
+                jar.addClass(pkg + "Type" + j, pkg + "Base");
+            }
+            libraryJars.add(jar.write(new File(dir, "libs/lib" + i + ".jar")));
+        }
+
+        final TestJar inputJar = new TestJar();
+        for (int i = 0; i < classes; i++) {
+            final String superName = libraries == 0 ? "java/lang/Object" : "lib" + (i % used) + "/Base";
+            inputJar.addClass("app/Type" + i, superName);
+        }
+        return new SyntheticJars(inputJar.write(new File(dir, "input.jar")), libraryJars);
+    }
+
+    File getInput() {
+        return input;
+    }
+
+    List<File> getLibraries() {
+        return libraries;
+    }
+}
@@ -0,0 +1,63 @@
+package dev.skidfuscator.gradle;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Builds small jars of generated classes for tests.
+ */
+final class TestJar {
+
+    private final Map<String, byte[]> entries = new LinkedHashMap<>();
+
+    TestJar addClass(String name, String superName, String... interfaces) {
+        return addEntry(name + ".class", classBytes(Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, superName, interfaces));
+    }
+
+    TestJar addInterface(String name, String... interfaces) {
+        return addEntry(name + ".class", classBytes(Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT,
+                name, "java/lang/Object", interfaces));
+    }
+
+    TestJar addEntry(String name, byte[] bytes) {
+        entries.put(name, bytes);
+        return this;
+    }
+
+    File write(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file))) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    static byte[] classBytes(int access, String name, String superName, String... interfaces) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, access, name, null, superName, interfaces.length == 0 ? null : interfaces);
+        if ((access & Opcodes.ACC_INTERFACE) == 0) {
+            MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+            init.visitCode();
+            init.visitVarInsn(Opcodes.ALOAD, 0);
+            init.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+            init.visitInsn(Opcodes.RETURN);
+            init.visitMaxs(0, 0);
+            init.visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,79 @@
+package dev.skidfuscator.gradle;
+
+import org.gradle.api.logging.Logging;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransformerCostReportTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void runsAreBoundedAndKeepTheirOwnLogs() throws IOException {
+        final Map<String, Object> transformers = new LinkedHashMap<>();
+        for (String name : Arrays.asList("flow", "number", "string", "disabled")) {
+            transformers.put(name, Collections.singletonMap("enabled", !"disabled".equals(name)));
+        }
+        final File reportDir = new File(dir, "report");
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger mostRunning = new AtomicInteger();
+        final List<String> started = Collections.synchronizedList(new ArrayList<>());
+
+        try (SkidfuscatorOutput output = new SkidfuscatorOutput(new File(dir, "skidfuscator.log"),
+                Logging.getLogger(TransformerCostReportTest.class), SkidfuscatorLogLevel.SUMMARY)) {
+            new TransformerCostReport(reportDir, Logging.getLogger(TransformerCostReportTest.class)).measure(transformers,
+                    new File(dir, "output.jar"), 2, true, output, (variant, runDir, result) -> runOutput -> {
+                        started.add(runDir.getName());
+                        mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        try {
+                            Thread.sleep(50);
+                            runOutput.stdout().write(("obfuscated " + runDir.getName() + "\n").getBytes(StandardCharsets.UTF_8));
+                            new TestJar().addClass("app/Main", "java/lang/Object").write(result);
+                        } finally {
+                            running.decrementAndGet();
+                        }
+                        return 50;
+                    });
+        }
+
+        assertEquals(2, mostRunning.get());
+        // The warm-up runs the baseline alone before the others
+        assertEquals("baseline", started.get(0));
+        assertEquals(5, started.size());
+        for (String run : Arrays.asList("baseline", "flow", "number", "string")) {
+            assertEquals(Collections.singletonList("obfuscated " + run),
+                    Files.readAllLines(new File(reportDir, run + "/skidfuscator.log").toPath()));
+        }
+        assertFalse(new File(reportDir, "disabled").exists());
+        assertTrue(new File(reportDir, "cost-report.txt").isFile());
+    }
+
+    @Test
+    void everyEnabledTransformerIsDisabledOnce() {
+        final Map<String, Object> transformers = new HashMap<>();
+        transformers.put("string", Collections.singletonMap("enabled", true));
+        transformers.put("flow", Collections.singletonMap("enabled", false));
+        transformers.put("setting", "value");
+
+        final Map<String, Map<String, Object>> variants = TransformerCostReport.variants(transformers);
+        assertEquals(Arrays.asList("baseline", "string"), new ArrayList<>(variants.keySet()));
+        assertEquals(Collections.singletonMap("enabled", false), variants.get("string").get("string"));
+        assertEquals("value", variants.get("string").get("setting"));
+    }
+}